@@ -0,0 +1,122 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins.packaging;
+
+import com.github.jengelman.gradle.plugins.shadow.relocation.RelocateClassContext;
+import com.github.jengelman.gradle.plugins.shadow.relocation.Relocator;
+import com.github.jengelman.gradle.plugins.shadow.relocation.SimpleRelocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.util.function.Function.identity;
+
+/**
+ * Compares relocating the package names of a bundle's contents (as done when deriving OSGi exports) through a chain
+ * of Shadow relocators against {@link PackageRelocator}'s prefix index.
+ * <p>
+ * The relocation set mirrors a typical Terracotta package: a couple of dozen shaded third-party libraries, with the
+ * packaged contents spread over relocated and unrelocated packages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackageRelocatorBenchmark {
+
+  private static final String SHADED = "org.terracotta.shaded.";
+  private static final String[] LIBRARIES = {
+      "com.fasterxml.jackson.core", "com.fasterxml.jackson.databind", "com.fasterxml.jackson.annotation",
+      "com.google.common", "com.google.gson", "com.google.protobuf", "io.netty", "io.micrometer",
+      "org.apache.commons.lang3", "org.apache.commons.io", "org.apache.commons.codec", "org.apache.commons.collections4",
+      "org.apache.httpcomponents", "org.apache.hc.core5", "org.apache.hc.client5", "org.bouncycastle",
+      "org.objectweb.asm", "org.slf4j.helpers", "org.yaml.snakeyaml", "net.bytebuddy", "javax.cache", "org.HdrHistogram"
+  };
+  private static final String[] SUBPACKAGES = {"", ".impl", ".util", ".internal", ".api", ".spi", ".io", ".concurrent"};
+  private static final String[] UNRELOCATED = {
+      "org.terracotta.statistics", "org.terracotta.offheapstore", "org.ehcache.core", "org.ehcache.impl", "org.ehcache.xml"
+  };
+
+  private List<String> packages;
+  private Function<String, String> shadowChain;
+  private PackageRelocator packageRelocator;
+
+  @Setup
+  public void setup() {
+    Map<String, String> relocations = new LinkedHashMap<>();
+    for (String library : LIBRARIES) {
+      relocations.put(library, SHADED + library);
+    }
+
+    packages = new ArrayList<>();
+    for (String root : LIBRARIES) {
+      for (String subpackage : SUBPACKAGES) {
+        packages.add(root + subpackage);
+      }
+    }
+    for (String root : UNRELOCATED) {
+      for (String subpackage : SUBPACKAGES) {
+        packages.add(root + subpackage);
+      }
+    }
+
+    List<Relocator> relocators = new ArrayList<>();
+    relocations.forEach((pattern, destination) -> relocators.add(new SimpleRelocator(pattern, destination, Collections.emptyList(), Collections.emptyList())));
+    shadowChain = relocators.stream().<Function<String, String>>map(relocator -> path -> {
+      if (relocator.canRelocateClass(path + ".")) {
+        String relocated = relocator.relocateClass(new RelocateClassContext(path + "."));
+        return relocated.substring(0, relocated.length() - 1);
+      } else {
+        return path;
+      }
+    }).reduce((a, b) -> b.andThen(a)).orElse(identity());
+    packageRelocator = new PackageRelocator(relocations);
+  }
+
+  @Benchmark
+  public void shadowRelocatorChain(Blackhole blackhole) {
+    for (String p : packages) {
+      blackhole.consume(shadowChain.apply(p));
+    }
+  }
+
+  @Benchmark
+  public void prefixIndex(Blackhole blackhole) {
+    for (String p : packages) {
+      blackhole.consume(packageRelocator.relocatePackageName(p));
+    }
+  }
+}
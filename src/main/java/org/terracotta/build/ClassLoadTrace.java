@@ -0,0 +1,154 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.OutputFile;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Class load order as recorded by a JVM running with {@code -verbose:class} (or {@code -Xlog:class+load}).
+ * <p>
+ * Both the legacy Java 8 format ({@code [Loaded a.b.C from ...]}) and the unified logging format
+ * ({@code [info][class,load] a.b.C source: ...}) are understood. Any other lines (e.g. the traced program's own
+ * output) are ignored.
+ */
+public class ClassLoadTrace {
+
+  private static final Pattern LEGACY_FORMAT = Pattern.compile("^\\[Loaded (\\S+) from .*");
+  private static final Pattern UNIFIED_FORMAT = Pattern.compile(".*\\[class,load\\s*]\\s+(\\S+)\\s+source:.*");
+
+  private final List<String> classes;
+
+  private ClassLoadTrace(List<String> classes) {
+    this.classes = classes;
+  }
+
+  /**
+   * Parse a class load log.
+   *
+   * @param log log file
+   * @return the parsed trace
+   * @throws IOException on failure to read the log
+   */
+  public static ClassLoadTrace parse(Path log) throws IOException {
+    Set<String> classes = new LinkedHashSet<>();
+    try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Matcher legacy = LEGACY_FORMAT.matcher(line);
+        if (legacy.matches()) {
+          classes.add(legacy.group(1));
+        } else {
+          Matcher unified = UNIFIED_FORMAT.matcher(line);
+          if (unified.matches()) {
+            classes.add(unified.group(1));
+          }
+        }
+      }
+    }
+    return new ClassLoadTrace(new ArrayList<>(classes));
+  }
+
+  /**
+   * Returns the loaded class names in first-load order.
+   *
+   * @return loaded classes
+   */
+  public List<String> getClasses() {
+    return classes;
+  }
+
+  /**
+   * Returns the class file entry names of the loaded classes in first-load order.
+   *
+   * @return class file entry names
+   */
+  public List<String> getEntryNames() {
+    List<String> entries = new ArrayList<>(classes.size());
+    for (String name : classes) {
+      entries.add(name.replace('.', '/') + ".class");
+    }
+    return entries;
+  }
+
+  /**
+   * Runs a Java program with class load logging enabled, recording the log to a file.
+   * <p>
+   * The program's standard output is captured and written to the log once the program completes, so it should be
+   * kept quiet.
+   */
+  public abstract static class Record extends JavaExec {
+
+    private ByteArrayOutputStream output;
+
+    public Record() {
+      jvmArgs("-verbose:class");
+      getArgumentProviders().add(() -> getTrainingArguments().get());
+
+      doFirst(new Action<Task>() {
+        @Override
+        public void execute(Task task) {
+          output = new ByteArrayOutputStream();
+          setStandardOutput(output);
+        }
+      });
+      doLast(new Action<Task>() {
+        @Override
+        public void execute(Task task) {
+          try {
+            Files.write(getClassLoadLog().get().getAsFile().toPath(), output.toByteArray());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          } finally {
+            output = null;
+          }
+        }
+      });
+    }
+
+    /**
+     * Arguments for the training run, appended to any configured {@code args}.
+     *
+     * @return training arguments
+     */
+    @Input
+    public abstract ListProperty<String> getTrainingArguments();
+
+    @OutputFile
+    public abstract RegularFileProperty getClassLoadLog();
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Incremental, {@code Sync}-like mirroring of a set of files into a directory.
+ * <p>
+ * Only entries whose source differs from what is already present are (re)created, and anything in the destination that
+ * is not part of the mapping is removed. Entries can be created as hard-links to their source, falling back to a plain
+ * copy when the file system refuses (e.g. across devices).
+ */
+public class FileMirror {
+
+  private final Path destination;
+  private final boolean link;
+
+  private int unchanged;
+  private int linked;
+  private int copied;
+  private int deleted;
+
+  private FileMirror(Path destination, boolean link) {
+    this.destination = destination;
+    this.link = link;
+  }
+
+  /**
+   * Mirror the given files into the destination directory.
+   *
+   * @param sources map of destination relative paths to source files
+   * @param destination destination directory
+   * @param link {@code true} to hard-link entries where possible, {@code false} to always copy
+   * @return the mirroring statistics
+   * @throws IOException on failure to update the destination
+   */
+  public static FileMirror mirror(Map<String, Path> sources, Path destination, boolean link) throws IOException {
+    FileMirror mirror = new FileMirror(destination, link);
+    mirror.apply(sources);
+    return mirror;
+  }
+
+  private void apply(Map<String, Path> sources) throws IOException {
+    Files.createDirectories(destination);
+
+    List<Path> existing;
+    try (Stream<Path> walk = Files.walk(destination)) {
+      existing = walk.filter(p -> !p.equals(destination)).sorted(Comparator.reverseOrder()).collect(toList());
+    }
+    for (Path path : existing) {
+      String relative = destination.relativize(path).toString().replace('\\', '/');
+      if (Files.isDirectory(path)) {
+        try {
+          Files.delete(path);
+        } catch (DirectoryNotEmptyException e) {
+          //still has live content
+        }
+      } else if (!sources.containsKey(relative)) {
+        Files.delete(path);
+        deleted++;
+      }
+    }
+
+    for (Map.Entry<String, Path> source : sources.entrySet()) {
+      update(source.getValue(), destination.resolve(source.getKey()));
+    }
+  }
+
+  private void update(Path source, Path target) throws IOException {
+    if (Files.exists(target)) {
+      if (isCurrent(source, target)) {
+        unchanged++;
+        return;
+      } else {
+        Files.delete(target);
+      }
+    } else {
+      Files.createDirectories(target.getParent());
+    }
+
+    if (link) {
+      try {
+        Files.createLink(target, source);
+        linked++;
+        return;
+      } catch (IOException | UnsupportedOperationException e) {
+        //cross-device, or a file system without hard-link support: fall through to a copy
+      }
+    }
+    Files.copy(source, target, COPY_ATTRIBUTES, REPLACE_EXISTING);
+    copied++;
+  }
+
+  private static boolean isCurrent(Path source, Path target) throws IOException {
+    if (Files.isSameFile(source, target)) {
+      return true;
+    } else {
+      BasicFileAttributes sourceAttributes = Files.readAttributes(source, BasicFileAttributes.class);
+      BasicFileAttributes targetAttributes = Files.readAttributes(target, BasicFileAttributes.class);
+      /*
+       * Copied timestamps can lose precision (e.g. nanoseconds on the source, microseconds on the copy).
+       */
+      return sourceAttributes.size() == targetAttributes.size()
+              && sourceAttributes.lastModifiedTime().toMillis() == targetAttributes.lastModifiedTime().toMillis();
+    }
+  }
+
+  public int getUnchanged() {
+    return unchanged;
+  }
+
+  public int getLinked() {
+    return linked;
+  }
+
+  public int getCopied() {
+    return copied;
+  }
+
+  public int getDeleted() {
+    return deleted;
+  }
+
+  @Override
+  public String toString() {
+    return destination + ": " + linked + " linked, " + copied + " copied, " + unchanged + " unchanged, " + deleted + " deleted";
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Reproducible, multi-threaded archiving of directory trees.
+ * <p>
+ * Zip entries are deflated concurrently by a pool of workers and then written in (sorted) name order. Files that are
+ * already compressed (jars, nested archives, images) are stored rather than deflated a second time. Gzipped tarballs
+ * are written sequentially but compressed block-parallel via {@link ParallelGzipOutputStream}.
+ */
+public class DirectoryArchiver {
+
+  private static final Set<String> COMPRESSED_EXTENSIONS = unmodifiableSet(new HashSet<>(Arrays.asList(
+          "jar", "war", "ear", "zip", "jmod", "gz", "tgz", "bz2", "xz", "7z", "png", "jpg", "jpeg", "gif"
+  )));
+
+  /*
+   * Deflated entries larger than this are spilled to disk while they wait their turn to be written.
+   */
+  private static final long IN_MEMORY_LIMIT = 8 * 1024 * 1024;
+
+  private final int parallelism;
+  private final int level;
+  private final Path temporaryDir;
+
+  /**
+   * Creates an archiver.
+   *
+   * @param parallelism number of compression workers
+   * @param level deflate compression level
+   * @param temporaryDir scratch space for large compressed entries
+   */
+  public DirectoryArchiver(int parallelism, int level, Path temporaryDir) {
+    this.parallelism = Math.max(1, parallelism);
+    this.level = level;
+    this.temporaryDir = temporaryDir;
+  }
+
+  /**
+   * Zip the given directories, nested under a common root directory.
+   *
+   * @param prefix root directory name in the archive, or empty for none
+   * @param roots directories to archive (earlier roots win on conflicting paths)
+   * @param archive output zip file
+   * @throws IOException on failure
+   */
+  public void zip(String prefix, Iterable<Path> roots, Path archive) throws IOException {
+    Map<String, Path> entries = collect(prefix, roots);
+    ExecutorService executor = executor();
+    Set<Path> spills = ConcurrentHashMap.newKeySet();
+    try (ZipWriter zip = new ZipWriter(Files.newOutputStream(archive))) {
+      Deque<Future<PreparedEntry>> window = new ArrayDeque<>();
+      for (Map.Entry<String, Path> entry : entries.entrySet()) {
+        String name = entry.getKey();
+        Path path = entry.getValue();
+        window.addLast(executor.submit(() -> prepare(name, path, spills)));
+        while (window.size() >= 2 * parallelism) {
+          await(window.removeFirst()).writeTo(zip);
+        }
+      }
+      while (!window.isEmpty()) {
+        await(window.removeFirst()).writeTo(zip);
+      }
+    } finally {
+      shutdown(executor);
+      for (Path spill : spills) {
+        Files.deleteIfExists(spill);
+      }
+    }
+  }
+
+  /**
+   * Create a gzipped tarball of the given directories, nested under a common root directory.
+   *
+   * @param prefix root directory name in the archive, or empty for none
+   * @param roots directories to archive (earlier roots win on conflicting paths)
+   * @param archive output tarball
+   * @throws IOException on failure
+   */
+  public void tarGz(String prefix, Iterable<Path> roots, Path archive) throws IOException {
+    Map<String, Path> entries = collect(prefix, roots);
+    ExecutorService executor = executor();
+    try (TarWriter tar = new TarWriter(new ParallelGzipOutputStream(Files.newOutputStream(archive), executor, parallelism, level, ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE))) {
+      for (Map.Entry<String, Path> entry : entries.entrySet()) {
+        String name = entry.getKey();
+        Path path = entry.getValue();
+        if (name.endsWith("/")) {
+          tar.directory(name, mode(path, true));
+        } else {
+          try (InputStream input = Files.newInputStream(path)) {
+            tar.file(name, mode(path, false), Files.size(path), input);
+          }
+        }
+      }
+    } finally {
+      shutdown(executor);
+    }
+  }
+
+  private static Map<String, Path> collect(String prefix, Iterable<Path> roots) throws IOException {
+    String base = prefix.isEmpty() ? "" : prefix + "/";
+    TreeMap<String, Path> entries = new TreeMap<>();
+    for (Path root : roots) {
+      try (Stream<Path> walk = Files.walk(root)) {
+        walk.forEach(path -> {
+          String relative = root.relativize(path).toString().replace('\\', '/');
+          if (Files.isDirectory(path)) {
+            String name = base + relative + (relative.isEmpty() ? "" : "/");
+            if (!name.isEmpty()) {
+              entries.putIfAbsent(name, path);
+            }
+          } else {
+            entries.putIfAbsent(base + relative, path);
+          }
+        });
+      }
+    }
+    return entries;
+  }
+
+  private PreparedEntry prepare(String name, Path path, Set<Path> spills) throws IOException {
+    if (name.endsWith("/")) {
+      int mode = mode(path, true);
+      return zip -> zip.directory(name, mode);
+    } else {
+      int mode = mode(path, false);
+      if (isCompressed(name)) {
+        return stored(name, path, mode);
+      } else {
+        return deflated(name, path, mode, spills);
+      }
+    }
+  }
+
+  private static PreparedEntry stored(String name, Path path, int mode) throws IOException {
+    CRC32 crc = new CRC32();
+    long size = 0;
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream input = Files.newInputStream(path)) {
+      int read;
+      while ((read = input.read(buffer)) >= 0) {
+        crc.update(buffer, 0, read);
+        size += read;
+      }
+    }
+    long crcValue = crc.getValue();
+    long length = size;
+    return zip -> zip.entry(name, ZipWriter.STORED, crcValue, length, length, mode, out -> Files.copy(path, out));
+  }
+
+  private PreparedEntry deflated(String name, Path path, int mode, Set<Path> spills) throws IOException {
+    long size = Files.size(path);
+    Path spill = size > IN_MEMORY_LIMIT ? Files.createTempFile(temporaryDir, "entry", ".deflate") : null;
+    if (spill != null) {
+      spills.add(spill);
+    }
+    ByteArrayOutputStream memory = spill == null ? new ByteArrayOutputStream((int) size / 2 + 64) : null;
+
+    CRC32 crc = new CRC32();
+    Deflater deflater = new Deflater(level, true);
+    long compressedSize;
+    long uncompressedSize;
+    try {
+      try (InputStream input = new CheckedInputStream(Files.newInputStream(path), crc);
+           OutputStream sink = spill == null ? memory : Files.newOutputStream(spill);
+           DeflaterOutputStream output = new DeflaterOutputStream(sink, deflater, 64 * 1024)) {
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+          output.write(buffer, 0, read);
+        }
+        output.finish();
+      }
+      compressedSize = deflater.getBytesWritten();
+      uncompressedSize = deflater.getBytesRead();
+    } finally {
+      deflater.end();
+    }
+
+    if (compressedSize >= uncompressedSize) {
+      if (spill != null) {
+        Files.delete(spill);
+        spills.remove(spill);
+      }
+      return stored(name, path, mode);
+    } else {
+      long crcValue = crc.getValue();
+      return zip -> {
+        if (spill == null) {
+          zip.entry(name, ZipWriter.DEFLATED, crcValue, compressedSize, uncompressedSize, mode, memory::writeTo);
+        } else {
+          try {
+            zip.entry(name, ZipWriter.DEFLATED, crcValue, compressedSize, uncompressedSize, mode, out -> Files.copy(spill, out));
+          } finally {
+            Files.delete(spill);
+            spills.remove(spill);
+          }
+        }
+      };
+    }
+  }
+
+  private static boolean isCompressed(String name) {
+    int dot = name.lastIndexOf('.');
+    return dot > name.lastIndexOf('/') && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+  }
+
+  static int mode(Path path, boolean directory) throws IOException {
+    PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+    if (view == null) {
+      if (directory) {
+        return ZipWriter.DEFAULT_DIRECTORY_MODE;
+      } else if (path.getFileName().toString().endsWith(".sh")) {
+        return ZipWriter.DEFAULT_EXECUTABLE_MODE;
+      } else {
+        return ZipWriter.DEFAULT_FILE_MODE;
+      }
+    } else {
+      int mode = 0;
+      for (PosixFilePermission permission : view.readAttributes().permissions()) {
+        mode |= 0400 >> permission.ordinal();
+      }
+      return mode;
+    }
+  }
+
+  private ExecutorService executor() {
+    AtomicInteger count = new AtomicInteger();
+    return Executors.newFixedThreadPool(parallelism, r -> {
+      Thread thread = new Thread(r, "archive-compressor-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /*
+   * Waits for in-flight compression to stop so that no spill file can be created after the caller's cleanup.
+   */
+  private static void shutdown(ExecutorService executor) throws IOException {
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else {
+        throw new IOException(cause);
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface PreparedEntry {
+    void writeTo(ZipWriter zip) throws IOException;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.archive;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Ant-style patterns, as used by Gradle's pattern sets, applied to archive entry names.
+ */
+public final class EntryPatterns {
+
+  private EntryPatterns() {}
+
+  /**
+   * Compile a single ant-style pattern.
+   *
+   * @param pattern ant-style pattern
+   * @return an equivalent regular expression
+   */
+  public static Pattern compile(String pattern) {
+    String ant = pattern.endsWith("/") ? pattern + "**" : pattern;
+    StringBuilder regex = new StringBuilder();
+    for (int i = 0; i < ant.length(); i++) {
+      char c = ant.charAt(i);
+      if (ant.startsWith("**/", i)) {
+        regex.append("(?:.*/)?");
+        i += 2;
+      } else if (ant.startsWith("/**", i) && i + 3 == ant.length()) {
+        regex.append("(?:/.*)?");
+        i += 2;
+      } else if (ant.startsWith("**", i)) {
+        regex.append(".*");
+        i += 1;
+      } else if (c == '*') {
+        regex.append("[^/]*");
+      } else if (c == '?') {
+        regex.append("[^/]");
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  /**
+   * Returns a predicate matching entries that match any of the patterns, either directly or through one of their
+   * parent directories (as Gradle does when excluding a directory).
+   *
+   * @param patterns ant-style patterns
+   * @return entry name predicate
+   */
+  public static Predicate<String> anyMatch(Collection<String> patterns) {
+    List<Pattern> compiled = patterns.stream().map(EntryPatterns::compile).collect(toList());
+    if (compiled.isEmpty()) {
+      return name -> false;
+    }
+    return name -> {
+      String path = name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+      for (int slash = path.indexOf('/'); ; slash = path.indexOf('/', slash + 1)) {
+        String candidate = slash < 0 ? path : path.substring(0, slash);
+        if (compiled.stream().anyMatch(p -> p.matcher(candidate).matches())) {
+          return true;
+        } else if (slash < 0) {
+          return false;
+        }
+      }
+    };
+  }
+}
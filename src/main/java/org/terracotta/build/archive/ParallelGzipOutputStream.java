@@ -0,0 +1,200 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output stream that compresses fixed size blocks concurrently.
+ * <p>
+ * Following the approach of {@code pigz}, the input is cut in to blocks that are deflated independently, each primed
+ * with the trailing 32KiB of the previous block as a preset dictionary. Every block but the last is terminated with a
+ * sync flush so that the compressed blocks concatenate into a single valid deflate stream. The output is deterministic
+ * for a given input, block size and compression level, regardless of thread count.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+  public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+  private static final byte[] HEADER = new byte[] {
+          0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, //magic, method, flags
+          0, 0, 0, 0, //mtime
+          0, (byte) 0xff //extra flags, OS 'unknown'
+  };
+
+  private final OutputStream output;
+  private final ExecutorService executor;
+  private final int level;
+  private final int blockSize;
+  private final int maxInFlight;
+
+  private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+  private final CRC32 crc = new CRC32();
+
+  private byte[] block;
+  private int blockLength;
+  private byte[] dictionary;
+  private long size;
+  private boolean closed;
+
+  /**
+   * Creates a parallel gzip stream.
+   *
+   * @param output compressed output
+   * @param executor executor to run block compression on
+   * @param parallelism number of blocks that can be compressed concurrently
+   * @param level deflate compression level
+   * @param blockSize uncompressed block size
+   * @throws IOException if the gzip header cannot be written
+   */
+  public ParallelGzipOutputStream(OutputStream output, ExecutorService executor, int parallelism, int level, int blockSize) throws IOException {
+    if (blockSize < DICTIONARY_SIZE) {
+      throw new IllegalArgumentException("Block size must be at least " + DICTIONARY_SIZE + " bytes");
+    }
+    this.output = output;
+    this.executor = executor;
+    this.level = level;
+    this.blockSize = blockSize;
+    this.maxInFlight = 2 * Math.max(1, parallelism);
+    this.block = new byte[blockSize];
+    output.write(HEADER);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    crc.update(b, off, len);
+    size += len;
+    while (len > 0) {
+      int chunk = Math.min(len, blockSize - blockLength);
+      System.arraycopy(b, off, block, blockLength, chunk);
+      blockLength += chunk;
+      off += chunk;
+      len -= chunk;
+      if (blockLength == blockSize) {
+        submit(false);
+      }
+    }
+  }
+
+  private void submit(boolean last) throws IOException {
+    byte[] data = block;
+    int length = blockLength;
+    byte[] preset = dictionary;
+    inFlight.addLast(executor.submit(() -> deflate(preset, data, length, last)));
+
+    if (length >= DICTIONARY_SIZE) {
+      dictionary = Arrays.copyOfRange(data, length - DICTIONARY_SIZE, length);
+    }
+    block = new byte[blockSize];
+    blockLength = 0;
+
+    while (inFlight.size() >= maxInFlight) {
+      drainOne();
+    }
+  }
+
+  private byte[] deflate(byte[] preset, byte[] data, int length, boolean last) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      if (preset != null) {
+        deflater.setDictionary(preset);
+      }
+      deflater.setInput(data, 0, length);
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+      byte[] buffer = new byte[64 * 1024];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          int n = deflater.deflate(buffer);
+          compressed.write(buffer, 0, n);
+        }
+      } else {
+        int n;
+        do {
+          n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          compressed.write(buffer, 0, n);
+        } while (n == buffer.length || !deflater.needsInput());
+      }
+      return compressed.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void drainOne() throws IOException {
+    try {
+      output.write(inFlight.removeFirst().get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      throw new IOException("Block compression failed", e.getCause());
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    output.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      submit(true);
+      while (!inFlight.isEmpty()) {
+        drainOne();
+      }
+      writeIntLE((int) crc.getValue());
+      writeIntLE((int) size);
+    } finally {
+      inFlight.forEach(f -> f.cancel(true));
+      output.close();
+    }
+  }
+
+  private void writeIntLE(int value) throws IOException {
+    output.write(value & 0xff);
+    output.write((value >>> 8) & 0xff);
+    output.write((value >>> 16) & 0xff);
+    output.write((value >>> 24) & 0xff);
+  }
+}
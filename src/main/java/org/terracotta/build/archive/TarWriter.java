@@ -0,0 +1,198 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal ustar writer with PAX extended headers for long paths.
+ * <p>
+ * All entries are written with a fixed modification time and no owner information so that the output depends only on
+ * the entry names, modes and content.
+ */
+public class TarWriter implements Closeable {
+
+  /**
+   * 1980-02-01T00:00:00Z, the same date Gradle uses for reproducible archives (but pinned to UTC).
+   */
+  public static final long CONSTANT_MTIME = 318211200L;
+
+  private static final int BLOCK = 512;
+  private static final int RECORD = 20 * BLOCK;
+
+  private final OutputStream output;
+  private final byte[] buffer = new byte[64 * 1024];
+  private long count;
+
+  public TarWriter(OutputStream output) {
+    this.output = output;
+  }
+
+  /**
+   * Write a directory entry.
+   *
+   * @param name directory name, with a trailing {@code '/'}
+   * @param mode unix permission bits
+   * @throws IOException on write failure
+   */
+  public void directory(String name, int mode) throws IOException {
+    if (!name.endsWith("/")) {
+      throw new IllegalArgumentException("Directory names must end with '/': " + name);
+    }
+    header(name, mode, 0, '5');
+  }
+
+  /**
+   * Write a file entry.
+   *
+   * @param name entry name
+   * @param mode unix permission bits
+   * @param size exact number of bytes available from {@code data}
+   * @param data entry content
+   * @throws IOException on read or write failure
+   */
+  public void file(String name, int mode, long size, InputStream data) throws IOException {
+    header(name, mode, size, '0');
+    long remaining = size;
+    while (remaining > 0) {
+      int read = data.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+      if (read < 0) {
+        throw new IOException("Premature end of data for " + name + ": " + remaining + " bytes missing");
+      }
+      write(buffer, 0, read);
+      remaining -= read;
+    }
+    pad();
+  }
+
+  private void header(String name, int mode, long size, char type) throws IOException {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    byte[] prefix = new byte[0];
+    if (nameBytes.length > 100) {
+      int split = splitPoint(nameBytes);
+      if (split < 0) {
+        pax(name);
+        nameBytes = Arrays.copyOf(nameBytes, 100);
+      } else {
+        prefix = Arrays.copyOf(nameBytes, split);
+        nameBytes = Arrays.copyOfRange(nameBytes, split + 1, nameBytes.length);
+      }
+    }
+    writeHeader(nameBytes, prefix, mode, size, type);
+  }
+
+  /*
+   * Find a '/' that splits the name in to a prefix of at most 155 bytes and a name of at most 100 bytes.
+   */
+  private static int splitPoint(byte[] name) {
+    for (int i = Math.min(155, name.length - 1); i > 0; i--) {
+      if (name[i] == '/' && name.length - i - 1 <= 100 && name.length - i - 1 > 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void pax(String name) throws IOException {
+    byte[] record = paxRecord("path", name);
+    writeHeader("././@PaxHeader".getBytes(StandardCharsets.UTF_8), new byte[0], 0644, record.length, 'x');
+    write(record, 0, record.length);
+    pad();
+  }
+
+  private static byte[] paxRecord(String key, String value) {
+    String body = " " + key + "=" + value + "\n";
+    int bodyLength = body.getBytes(StandardCharsets.UTF_8).length;
+    int length = bodyLength + 1;
+    while (length != bodyLength + Integer.toString(length).length()) {
+      length = bodyLength + Integer.toString(length).length();
+    }
+    return (length + body).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void writeHeader(byte[] name, byte[] prefix, int mode, long size, char type) throws IOException {
+    byte[] header = new byte[BLOCK];
+    System.arraycopy(name, 0, header, 0, name.length);
+    octal(header, 100, 8, mode);
+    octal(header, 108, 8, 0);
+    octal(header, 116, 8, 0);
+    if (size < 077777777777L) {
+      octal(header, 124, 12, size);
+    } else {
+      //GNU/star base-256 encoding for sizes over 8GiB
+      header[124] = (byte) 0x80;
+      for (int i = 0; i < 8; i++) {
+        header[135 - i] = (byte) (size >>> (8 * i));
+      }
+    }
+    octal(header, 136, 12, CONSTANT_MTIME);
+    Arrays.fill(header, 148, 156, (byte) ' ');
+    header[156] = (byte) type;
+    System.arraycopy("ustar\00000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+    System.arraycopy(prefix, 0, header, 345, prefix.length);
+
+    long checksum = 0;
+    for (byte b : header) {
+      checksum += b & 0xff;
+    }
+    octal(header, 148, 7, checksum);
+    header[155] = ' ';
+
+    write(header, 0, header.length);
+  }
+
+  private static void octal(byte[] header, int offset, int length, long value) {
+    String digits = Long.toOctalString(value);
+    int width = length - 1;
+    for (int i = 0; i < width; i++) {
+      int digit = digits.length() - width + i;
+      header[offset + i] = (byte) (digit < 0 ? '0' : digits.charAt(digit));
+    }
+    header[offset + width] = 0;
+  }
+
+  private void pad() throws IOException {
+    int remainder = (int) (count % BLOCK);
+    if (remainder != 0) {
+      write(new byte[BLOCK - remainder], 0, BLOCK - remainder);
+    }
+  }
+
+  private void write(byte[] bytes, int offset, int length) throws IOException {
+    output.write(bytes, offset, length);
+    count += length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      write(new byte[2 * BLOCK], 0, 2 * BLOCK);
+      int remainder = (int) (count % RECORD);
+      if (remainder != 0) {
+        write(new byte[RECORD - remainder], 0, RECORD - remainder);
+      }
+    } finally {
+      output.close();
+    }
+  }
+}
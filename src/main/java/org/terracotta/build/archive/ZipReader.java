@@ -0,0 +1,291 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal zip archive reader giving access to the raw (still compressed) data of each entry.
+ * <p>
+ * Paired with {@link ZipWriter} this allows entries to be copied between archives without being inflated and deflated
+ * again. Zip64 and encrypted archives are not supported.
+ */
+public class ZipReader implements Closeable {
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int UNIX = 3;
+
+  private final FileChannel channel;
+  private final Map<String, Entry> entries;
+
+  private ZipReader(FileChannel channel) throws IOException {
+    this.channel = channel;
+    this.entries = Collections.unmodifiableMap(readCentralDirectory());
+  }
+
+  public static ZipReader open(Path archive) throws IOException {
+    FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+    try {
+      return new ZipReader(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the archive entries, in central directory order. Where names are duplicated the first entry wins.
+   *
+   * @return the archive entries
+   */
+  public List<Entry> getEntries() {
+    return new ArrayList<>(entries.values());
+  }
+
+  public Entry getEntry(String name) {
+    return entries.get(name);
+  }
+
+  /**
+   * Copy the raw (possibly compressed) data of an entry.
+   *
+   * @param entry entry to copy
+   * @param output destination
+   * @throws IOException on read or write failure
+   */
+  public void copyRaw(Entry entry, OutputStream output) throws IOException {
+    long position = dataOffset(entry);
+    long end = position + entry.compressedSize;
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(64 * 1024, Math.max(1, entry.compressedSize)));
+    while (position < end) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new ZipException("Truncated entry data: " + entry.name);
+      }
+      output.write(buffer.array(), 0, read);
+      position += read;
+    }
+  }
+
+  /**
+   * Open the uncompressed content of an entry.
+   *
+   * @param entry entry to read
+   * @return the entry content
+   * @throws IOException on read failure
+   */
+  public InputStream getInputStream(Entry entry) throws IOException {
+    InputStream raw = Channels.newInputStream(channel.position(dataOffset(entry)));
+    InputStream bounded = new InputStream() {
+      private long remaining = entry.compressedSize;
+
+      @Override
+      public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0) {
+          return -1;
+        }
+        int read = raw.read(b, off, (int) Math.min(len, remaining));
+        if (read > 0) {
+          remaining -= read;
+        }
+        return read;
+      }
+    };
+    switch (entry.method) {
+      case ZipWriter.STORED:
+        return bounded;
+      case ZipWriter.DEFLATED:
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(bounded, inflater, 8192) {
+          @Override
+          public void close() {
+            inflater.end();
+          }
+        };
+      default:
+        throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+    }
+  }
+
+  private long dataOffset(Entry entry) throws IOException {
+    ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+    if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+      throw new ZipException("Invalid local header for " + entry.name);
+    }
+    return entry.localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+  }
+
+  private Map<String, Entry> readCentralDirectory() throws IOException {
+    long size = channel.size();
+    int tail = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + 0xffff);
+    ByteBuffer end = read(size - tail, tail);
+    int eocd = -1;
+    for (int i = tail - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+      if (end.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        eocd = i;
+        break;
+      }
+    }
+    if (eocd < 0) {
+      throw new ZipException("End of central directory not found");
+    }
+
+    int count = end.getShort(eocd + 10) & 0xffff;
+    long directorySize = end.getInt(eocd + 12) & 0xffffffffL;
+    long directoryOffset = end.getInt(eocd + 16) & 0xffffffffL;
+    if (count == 0xffff || directorySize == 0xffffffffL || directoryOffset == 0xffffffffL) {
+      throw new ZipException("Zip64 archives are not supported");
+    }
+
+    ByteBuffer directory = read(directoryOffset, (int) directorySize);
+    Map<String, Entry> result = new LinkedHashMap<>();
+    int position = 0;
+    for (int i = 0; i < count; i++) {
+      if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+        throw new ZipException("Invalid central directory header at entry " + i);
+      }
+      int madeBy = directory.getShort(position + 4) & 0xffff;
+      int flags = directory.getShort(position + 8) & 0xffff;
+      int method = directory.getShort(position + 10) & 0xffff;
+      long crc = directory.getInt(position + 16) & 0xffffffffL;
+      long compressedSize = directory.getInt(position + 20) & 0xffffffffL;
+      long uncompressedSize = directory.getInt(position + 24) & 0xffffffffL;
+      int nameLength = directory.getShort(position + 28) & 0xffff;
+      int extraLength = directory.getShort(position + 30) & 0xffff;
+      int commentLength = directory.getShort(position + 32) & 0xffff;
+      int externalAttributes = directory.getInt(position + 38);
+      long localHeaderOffset = directory.getInt(position + 42) & 0xffffffffL;
+
+      byte[] nameBytes = new byte[nameLength];
+      directory.position(position + 46);
+      directory.get(nameBytes);
+      String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+      if ((flags & 1) != 0) {
+        throw new ZipException("Encrypted entries are not supported: " + name);
+      } else if (compressedSize == 0xffffffffL || uncompressedSize == 0xffffffffL || localHeaderOffset == 0xffffffffL) {
+        throw new ZipException("Zip64 archives are not supported");
+      }
+
+      int mode = (madeBy >>> 8) == UNIX ? (externalAttributes >>> 16) & 0777 : 0;
+      result.putIfAbsent(name, new Entry(name, method, crc, compressedSize, uncompressedSize, mode, localHeaderOffset));
+      position += 46 + nameLength + extraLength + commentLength;
+    }
+    return result;
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new ZipException("Unexpected end of archive");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  public static final class Entry {
+
+    private final String name;
+    private final int method;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final int mode;
+    private final long localHeaderOffset;
+
+    Entry(String name, int method, long crc, long compressedSize, long size, int mode, long localHeaderOffset) {
+      this.name = name;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.mode = mode;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean isDirectory() {
+      return name.endsWith("/");
+    }
+
+    public int getMethod() {
+      return method;
+    }
+
+    public long getCrc() {
+      return crc;
+    }
+
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * Returns the unix permission bits of this entry, or zero if none were recorded.
+     *
+     * @return unix permission bits
+     */
+    public int getMode() {
+      return mode;
+    }
+  }
+}
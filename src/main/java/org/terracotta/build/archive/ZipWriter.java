@@ -0,0 +1,313 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Minimal zip archive writer that accepts already compressed entry data.
+ * <p>
+ * Unlike {@link java.util.zip.ZipOutputStream} the caller supplies the CRC, sizes and (possibly compressed) bytes of
+ * each entry. This allows entries to be compressed concurrently, or copied raw from another archive without being
+ * inflated and deflated again. All entries are written with a fixed timestamp (matching Gradle's reproducible archive
+ * timestamp) and UTF-8 names. Zip64 archives are not supported.
+ */
+public class ZipWriter implements Closeable {
+
+  public static final int STORED = ZipEntry.STORED;
+  public static final int DEFLATED = ZipEntry.DEFLATED;
+
+  public static final int DEFAULT_FILE_MODE = 0644;
+  public static final int DEFAULT_DIRECTORY_MODE = 0755;
+  public static final int DEFAULT_EXECUTABLE_MODE = 0755;
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+  /**
+   * 1980-02-01 00:00:00, the date Gradle uses for reproducible archives.
+   * <p>
+   * Zip entry times are zone-less: set through {@link ZipEntry#setTimeLocal(LocalDateTime)} this is the
+   * same entry time whatever the build's default time zone, and matches {@link TarWriter#CONSTANT_MTIME} in UTC.
+   */
+  public static final LocalDateTime CONSTANT_TIME = LocalDateTime.of(1980, Month.FEBRUARY, 1, 0, 0);
+
+  private static final int VERSION = 20;
+  private static final int VERSION_MADE_BY = (3 << 8) | VERSION; //unix, for the file modes
+  private static final int UTF8_FLAG = 1 << 11;
+
+  /*
+   * CONSTANT_TIME in MS-DOS date/time format.
+   */
+  private static final int DOS_TIME = 0;
+  private static final int DOS_DATE = (2 << 5) | 1;
+
+  private static final long MAX_SIZE = 0xffffffffL;
+  private static final int MAX_ENTRIES = 0xffff;
+
+  private final CountingOutputStream output;
+  private final List<CentralEntry> entries = new ArrayList<>();
+  private final Set<String> names = new HashSet<>();
+
+  public ZipWriter(OutputStream output) {
+    this.output = new CountingOutputStream(new BufferedOutputStream(output, 64 * 1024));
+  }
+
+  /**
+   * Returns {@code true} if an entry of this name has already been written.
+   *
+   * @param name entry name
+   * @return {@code true} if already present
+   */
+  public boolean contains(String name) {
+    return names.contains(name);
+  }
+
+  /**
+   * Write a directory entry.
+   *
+   * @param name directory name, with a trailing {@code '/'}
+   * @param mode unix permission bits
+   * @throws IOException on write failure
+   */
+  public void directory(String name, int mode) throws IOException {
+    if (!name.endsWith("/")) {
+      throw new IllegalArgumentException("Directory names must end with '/': " + name);
+    }
+    write(new CentralEntry(name, STORED, 0, 0, 0, 040000 | mode, true), out -> {});
+  }
+
+  /**
+   * Write a file entry whose data has already been prepared.
+   *
+   * @param name entry name
+   * @param method {@link #STORED} or {@link #DEFLATED}
+   * @param crc CRC-32 of the uncompressed data
+   * @param compressedSize size of the data as written
+   * @param size uncompressed size
+   * @param mode unix permission bits
+   * @param data writer of exactly {@code compressedSize} bytes of entry data
+   * @throws IOException on write failure
+   */
+  public void entry(String name, int method, long crc, long compressedSize, long size, int mode, EntryData data) throws IOException {
+    write(new CentralEntry(name, method, crc, compressedSize, size, 0100000 | mode, false), data);
+  }
+
+  /**
+   * Write a file entry from its uncompressed data, deflating it if requested.
+   *
+   * @param name entry name
+   * @param method {@link #STORED} or {@link #DEFLATED}
+   * @param mode unix permission bits
+   * @param data uncompressed entry data
+   * @throws IOException on write failure
+   */
+  public void entry(String name, int method, int mode, byte[] data) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    if (method == STORED) {
+      entry(name, STORED, crc.getValue(), data.length, data.length, mode, out -> out.write(data));
+    } else {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      try (OutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+        out.write(data);
+      } finally {
+        deflater.end();
+      }
+      entry(name, DEFLATED, crc.getValue(), compressed.size(), data.length, mode, compressed::writeTo);
+    }
+  }
+
+  /**
+   * Copy an entry raw (without inflating and deflating it) from another archive.
+   *
+   * @param reader source archive
+   * @param entry entry to copy
+   * @throws IOException on read or write failure
+   */
+  public void copy(ZipReader reader, ZipReader.Entry entry) throws IOException {
+    if (entry.isDirectory()) {
+      directory(entry.getName(), entry.getMode() == 0 ? DEFAULT_DIRECTORY_MODE : entry.getMode());
+    } else {
+      entry(entry.getName(), entry.getMethod(), entry.getCrc(), entry.getCompressedSize(), entry.getSize(),
+          entry.getMode() == 0 ? DEFAULT_FILE_MODE : entry.getMode(), out -> reader.copyRaw(entry, out));
+    }
+  }
+
+  private void write(CentralEntry entry, EntryData data) throws IOException {
+    if (!names.add(entry.name)) {
+      throw new IllegalArgumentException("Duplicate zip entry: " + entry.name);
+    } else if (entries.size() >= MAX_ENTRIES) {
+      throw new IOException("Zip64 archives are not supported: too many entries");
+    } else if (entry.compressedSize > MAX_SIZE || entry.size > MAX_SIZE || output.count > MAX_SIZE) {
+      throw new IOException("Zip64 archives are not supported: " + entry.name + " is too large");
+    }
+
+    entry.offset = output.count;
+    writeInt(LOCAL_HEADER_SIGNATURE);
+    writeShort(VERSION);
+    writeShort(UTF8_FLAG);
+    writeShort(entry.method);
+    writeShort(DOS_TIME);
+    writeShort(DOS_DATE);
+    writeInt((int) entry.crc);
+    writeInt((int) entry.compressedSize);
+    writeInt((int) entry.size);
+    writeShort(entry.nameBytes.length);
+    writeShort(0);
+    output.write(entry.nameBytes);
+
+    long start = output.count;
+    data.writeTo(output);
+    if (output.count - start != entry.compressedSize) {
+      throw new IOException("Entry " + entry.name + " wrote " + (output.count - start) + " bytes, expected " + entry.compressedSize);
+    }
+    entries.add(entry);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      long centralDirectoryOffset = output.count;
+      for (CentralEntry entry : entries) {
+        writeInt(CENTRAL_HEADER_SIGNATURE);
+        writeShort(VERSION_MADE_BY);
+        writeShort(VERSION);
+        writeShort(UTF8_FLAG);
+        writeShort(entry.method);
+        writeShort(DOS_TIME);
+        writeShort(DOS_DATE);
+        writeInt((int) entry.crc);
+        writeInt((int) entry.compressedSize);
+        writeInt((int) entry.size);
+        writeShort(entry.nameBytes.length);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt((entry.mode << 16) | (entry.directory ? 0x10 : 0));
+        writeInt((int) entry.offset);
+        output.write(entry.nameBytes);
+      }
+      long centralDirectorySize = output.count - centralDirectoryOffset;
+      if (centralDirectoryOffset > MAX_SIZE) {
+        throw new IOException("Zip64 archives are not supported: archive is too large");
+      }
+
+      writeInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+      writeShort(0);
+      writeShort(0);
+      writeShort(entries.size());
+      writeShort(entries.size());
+      writeInt((int) centralDirectorySize);
+      writeInt((int) centralDirectoryOffset);
+      writeShort(0);
+    } finally {
+      output.close();
+    }
+  }
+
+  private void writeShort(int value) throws IOException {
+    output.write(value & 0xff);
+    output.write((value >>> 8) & 0xff);
+  }
+
+  private void writeInt(int value) throws IOException {
+    writeShort(value & 0xffff);
+    writeShort((value >>> 16) & 0xffff);
+  }
+
+  @FunctionalInterface
+  public interface EntryData {
+    void writeTo(OutputStream output) throws IOException;
+  }
+
+  private static class CentralEntry {
+
+    private final String name;
+    private final byte[] nameBytes;
+    private final int method;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final int mode;
+    private final boolean directory;
+
+    private long offset;
+
+    CentralEntry(String name, int method, long crc, long compressedSize, long size, int mode, boolean directory) {
+      this.name = name;
+      this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.mode = mode;
+      this.directory = directory;
+    }
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+
+    private final OutputStream delegate;
+    private long count;
+
+    CountingOutputStream(OutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      delegate.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      delegate.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
+}
@@ -26,9 +26,14 @@ import org.gradle.api.Project;
 import org.gradle.api.Task;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
 import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
 import org.gradle.api.attributes.Category;
 import org.gradle.api.component.SoftwareComponent;
 import org.gradle.api.component.SoftwareComponentContainer;
+import org.gradle.api.credentials.PasswordCredentials;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.internal.artifacts.configurations.ConfigurationContainerInternal;
 import org.gradle.api.internal.artifacts.ivyservice.projectmodule.ProjectComponentPublication;
@@ -36,6 +41,7 @@ import org.gradle.api.internal.component.SoftwareComponentInternal;
 import org.gradle.api.plugins.BasePluginExtension;
 import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.JavaPluginExtension;
+import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.publish.PublishingExtension;
@@ -48,23 +54,51 @@ import org.gradle.api.publish.maven.tasks.AbstractPublishToMaven;
 import org.gradle.api.publish.maven.tasks.GenerateMavenPom;
 import org.gradle.api.publish.plugins.PublishingPlugin;
 import org.gradle.api.publish.tasks.GenerateModuleMetadata;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.Sync;
 import org.gradle.api.tasks.TaskAction;
-import org.gradle.api.tasks.TaskCollection;
 import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.bundling.AbstractArchiveTask;
 import org.gradle.api.tasks.javadoc.Javadoc;
 import org.gradle.external.javadoc.CoreJavadocOptions;
 import org.gradle.jvm.tasks.Jar;
-
+import org.terracotta.build.plugins.deploy.Checksums;
+import org.terracotta.build.plugins.deploy.MavenMetadata;
+import org.terracotta.build.plugins.deploy.PublicationInternals;
+import org.terracotta.build.plugins.deploy.RepositoryTransport;
+import org.terracotta.build.plugins.packaging.PackagingExtension;
+import org.terracotta.build.plugins.packaging.PackagingExtensionInternal;
+
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static java.util.Collections.emptyList;
 import static org.terracotta.build.PluginUtils.capitalize;
 
 /**
@@ -82,20 +116,31 @@ import static org.terracotta.build.PluginUtils.capitalize;
  * Defaults:
  * <ul>
  *   <li>POM: {@code <organization>} and {@code <developers>} section content</li>
- *   <li>POM copied to {@code META-INF/maven/groupId/artifactId/pom.xml}</li>
+ *   <li>POM copied to {@code META-INF/maven/groupId/artifactId/pom.xml} of the published {@code java} or
+ *   {@code package} component's main jar</li>
  *   <li>Javadoc and Source JAR Publishing</li>
  *   <li>{@code install} as alias of {@code publishToMavenLocal}</li>
+ *   <li>{@code publishStaged} as a checksum staging alternative to {@code publish} (see {@link StagePublication}),
+ *   optionally skipping artifacts already in the repository ({@code deploy { skipUnchanged = true }})</li>
  * </ul>
  */
 @SuppressWarnings("UnstableApiUsage")
 public class DeployPlugin implements Plugin<Project> {
 
   public static final String METADATA_CATEGORY = "metadata";
+  public static final String PUBLISH_STAGED_LIFECYCLE_TASK_NAME = "publishStaged";
+
+  private static final String JAVA_COMPONENT_NAME = "java";
 
   @Override
   public void apply(Project project) {
     project.getPlugins().apply(MavenPublishPlugin.class);
-    project.getExtensions().create(TcDeployExtension.class, "deploy", TcDeployExtension.class, project);
+    TcDeployExtension deploy = project.getExtensions().create(TcDeployExtension.class, "deploy", TcDeployExtension.class, project);
+
+    project.getTasks().register(PUBLISH_STAGED_LIFECYCLE_TASK_NAME, task -> {
+      task.setDescription("Publishes all staged Maven publications produced by this project.");
+      task.setGroup(PublishingPlugin.PUBLISH_TASK_GROUP);
+    });
 
     project.getExtensions().configure(PublishingExtension.class, publishing -> publishing.getPublications().withType(MavenPublication.class).configureEach(mavenPublication -> {
       mavenPublication.pom(pom -> {
@@ -110,12 +155,36 @@ public class DeployPlugin implements Plugin<Project> {
         }));
       });
 
-      project.getTasks().register("generatePomPropertiesFor" + capitalize(mavenPublication.getName()) + "Publication", GenerateMavenProperties.class).configure(task -> {
+      project.getTasks().register("generatePomPropertiesFor" + capitalize(mavenPublication.getName()) + "Publication", GenerateMavenProperties.class, task -> {
         task.setDescription("Generates the Maven POM properties file for publication '" + mavenPublication.getName() + "'.");
         task.setGroup(PublishingPlugin.PUBLISH_TASK_GROUP);
         task.getProjectIdentity().value(((MavenPublicationInternal) mavenPublication).getCoordinates(ModuleVersionIdentifier.class));
         task.getDestination().value(project.getLayout().getBuildDirectory().file("publications/" + mavenPublication.getName() +"/pom.properties"));
       });
+
+      TaskProvider<StagePublication> stage = project.getTasks().register("stage" + capitalize(mavenPublication.getName()) + "Publication", StagePublication.class, task -> {
+        task.setDescription("Stages publication '" + mavenPublication.getName() + "' with its checksums in a Maven repository layout.");
+        task.setGroup(PublishingPlugin.PUBLISH_TASK_GROUP);
+        task.getNamedArtifacts().set(PublicationInternals.artifacts(project.getProviders(), mavenPublication));
+        task.getArtifacts().from(PublicationInternals.publishableFiles(mavenPublication));
+        task.getProjectIdentity().value(PublicationInternals.coordinates(project.getProviders(), mavenPublication));
+        task.getStagingDirectory().value(project.getLayout().getBuildDirectory().dir("staging/" + mavenPublication.getName()));
+      });
+
+      publishing.getRepositories().withType(MavenArtifactRepository.class).configureEach(repository -> {
+        TaskProvider<PublishStagedPublication> publish = project.getTasks().register("publishStaged" + capitalize(mavenPublication.getName()) + "PublicationTo" + capitalize(repository.getName()) + "Repository", PublishStagedPublication.class, task -> {
+          task.setDescription("Publishes the staged publication '" + mavenPublication.getName() + "' to Maven repository '" + repository.getName() + "'.");
+          task.setGroup(PublishingPlugin.PUBLISH_TASK_GROUP);
+          task.getStagingDirectory().value(stage.flatMap(StagePublication::getStagingDirectory));
+          task.getProjectIdentity().value(stage.flatMap(StagePublication::getProjectIdentity));
+          task.getRepositoryUrl().value(project.provider(repository::getUrl));
+          Provider<PasswordCredentials> credentials = PublicationInternals.credentials(repository);
+          task.getUsername().value(credentials.map(PasswordCredentials::getUsername));
+          task.getPassword().value(credentials.map(PasswordCredentials::getPassword));
+          task.getSkipUnchanged().convention(deploy.getSkipUnchanged());
+        });
+        project.getTasks().named(PUBLISH_STAGED_LIFECYCLE_TASK_NAME).configure(task -> task.dependsOn(publish));
+      });
     }));
 
     /*
@@ -166,6 +235,7 @@ public class DeployPlugin implements Plugin<Project> {
     ));
 
     project.getPlugins().withType(JavaPlugin.class).configureEach(plugin -> {
+      embedPublicationMetadata(project, JAVA_COMPONENT_NAME, project.getTasks().named(JavaPlugin.JAR_TASK_NAME, Jar.class));
 
       project.getTasks().named(JavaPlugin.JAVADOC_TASK_NAME, Javadoc.class, javadoc -> {
         BasePluginExtension basePluginConvention = project.getExtensions().getByType(BasePluginExtension.class);
@@ -183,6 +253,15 @@ public class DeployPlugin implements Plugin<Project> {
       });
     });
 
+    /*
+     * The package archive task is only final once the project is evaluated (the OSGi plugin replaces it).
+     */
+    project.getPlugins().withType(PackagePlugin.class).configureEach(plugin -> project.afterEvaluate(p -> {
+      PackagingExtensionInternal packaging = (PackagingExtensionInternal) p.getExtensions().getByType(PackagingExtension.class);
+      embedPublicationMetadata(p, PackagePlugin.COMPONENT_NAME,
+          p.getTasks().named(packaging.getDefaultPackage().getArchiveTaskName().get(), AbstractArchiveTask.class));
+    }));
+
     project.afterEvaluate(p -> {
       p.getExtensions().configure(PublishingExtension.class, publishing -> {
         if (publishing.getPublications().isEmpty()) {
@@ -200,37 +279,51 @@ public class DeployPlugin implements Plugin<Project> {
           }
         }
       });
-
-      TaskCollection<GenerateMavenPom> poms = p.getTasks().withType(GenerateMavenPom.class);
-
-      p.getTasks().withType(Jar.class).configureEach(jar -> poms.forEach(pomTask -> {
-        MavenPublicationCoordinates identity = ((MavenPomInternal) pomTask.getPom()).getCoordinates();
-        jar.from(pomTask, spec -> {
-          spec.into("META-INF/maven/" + identity.getGroupId().get() + "/" + identity.getArtifactId().get());
-          spec.rename(".*", "pom.xml");
-        });
-      }));
-
-      TaskCollection<GenerateMavenProperties> properties = p.getTasks().withType(GenerateMavenProperties.class);
-
-      p.getTasks().withType(Jar.class).configureEach(jar -> properties.forEach(propertiesTask -> {
-        Property<ModuleVersionIdentifier> identity = propertiesTask.getProjectIdentity();
-        jar.from(propertiesTask, spec -> {
-          spec.into(identity.map(id -> "META-INF/maven/" + id.getGroup() + "/" + id.getName()));
-          spec.rename(".*", "pom.properties");
-        });
-      }));
     });
   }
 
+  /**
+   * Embeds the POM and POM properties of the publication of a component in the component's main artifact.
+   * <p>
+   * The publication is only looked up when the archive task's inputs are resolved: a publication's component is set
+   * when the publication is configured, which may be after this wiring.
+   */
+  private static void embedPublicationMetadata(Project project, String componentName, TaskProvider<? extends AbstractArchiveTask> archiveTask) {
+    NamedDomainObjectSet<MavenPublicationInternal> publications = project.getExtensions().getByType(PublishingExtension.class)
+        .getPublications().withType(MavenPublicationInternal.class);
+    Provider<MavenPublicationInternal> publication = project.provider(() -> publications.stream()
+        .filter(candidate -> candidate.getComponent().map(component -> componentName.equals(component.getName())).getOrElse(false))
+        .findFirst().orElse(null));
+    Provider<String> metaInf = publication.map(p -> p.getCoordinates(ModuleVersionIdentifier.class))
+        .map(id -> "META-INF/maven/" + id.getGroup() + "/" + id.getName());
+
+    archiveTask.configure(archive -> archive.into(metaInf.orElse("META-INF/maven"), spec -> {
+      spec.from((Callable<Object>) () -> publication.<Object>map(p -> project.getTasks().named("generatePomFileFor" + capitalize(p.getName()) + "Publication"))
+          .getOrElse(emptyList()), pom -> pom.rename(".*", "pom.xml"));
+      spec.from((Callable<Object>) () -> publication.<Object>map(p -> project.getTasks().named("generatePomPropertiesFor" + capitalize(p.getName()) + "Publication"))
+          .getOrElse(emptyList()), properties -> properties.rename(".*", "pom.properties"));
+    }));
+  }
+
   public static class TcDeployExtension {
 
     private final Project project;
     private final NamedDomainObjectSet<MavenPublication> mavenPublications;
+    private final Property<Boolean> skipUnchanged;
 
     public TcDeployExtension(Project project) {
       this.project = project;
       this.mavenPublications = project.getExtensions().getByType(PublishingExtension.class).getPublications().withType(MavenPublication.class);
+      this.skipUnchanged = project.getObjects().property(Boolean.class).convention(false);
+    }
+
+    /**
+     * Whether {@code publishStaged} skips uploading artifacts whose checksum matches the one already in the repository.
+     *
+     * @return the skip unchanged property
+     */
+    public Property<Boolean> getSkipUnchanged() {
+      return skipUnchanged;
     }
 
     public void setGroupId(String groupId) {
@@ -253,6 +346,13 @@ public class DeployPlugin implements Plugin<Project> {
     }
   }
 
+  /**
+   * Generates the {@code pom.properties} file embedded in a publication's jar.
+   * <p>
+   * Properties are written sorted and without {@link Properties#store}'s timestamp comment, so that the file, and the
+   * jar it is embedded in, are byte-for-byte reproducible.
+   */
+  @CacheableTask
   public static abstract class GenerateMavenProperties extends DefaultTask {
 
     @OutputFile
@@ -268,8 +368,206 @@ public class DeployPlugin implements Plugin<Project> {
       mavenProperties.setProperty("artifactId", getProjectIdentity().get().getName());
       mavenProperties.setProperty("version", getProjectIdentity().get().getVersion());
 
-      try (OutputStream output = Files.newOutputStream(getDestination().get().getAsFile().toPath())) {
-        mavenProperties.store(output, "Created by Gradle " + getProject().getGradle().getGradleVersion());
+      ByteArrayOutputStream stored = new ByteArrayOutputStream();
+      mavenProperties.store(stored, null);
+      String content = new String(stored.toByteArray(), StandardCharsets.ISO_8859_1).lines()
+          .filter(line -> !line.startsWith("#")).sorted().collect(Collectors.joining("\n", "", "\n"));
+      Files.write(getDestination().get().getAsFile().toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+  }
+
+  /**
+   * Copies all artifacts of a publication (including its POM, Gradle module metadata and any signatures) into a Maven
+   * repository layout, alongside their MD5, SHA-1, SHA-256 and SHA-512 checksum sidecars.
+   * <p>
+   * Each artifact is read once to both copy it and compute all four digests, and artifacts are processed in parallel.
+   * The {@code publishStaged...} tasks then transfer the staged tree as-is, without digesting anything again.
+   * Snapshot artifacts are staged under their {@code -SNAPSHOT} names: the timestamped names are assigned when they are
+   * published.
+   */
+  public static abstract class StagePublication extends DefaultTask {
+
+    /**
+     * The artifacts of the publication, keyed by their file name in the repository.
+     *
+     * @return the artifacts by file name
+     */
+    @Internal
+    public abstract MapProperty<String, File> getNamedArtifacts();
+
+    @Input
+    public Provider<Set<String>> getArtifactNames() {
+      return getNamedArtifacts().map(artifacts -> new TreeSet<>(artifacts.keySet()));
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract ConfigurableFileCollection getArtifacts();
+
+    @Input
+    public abstract Property<ModuleVersionIdentifier> getProjectIdentity();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getStagingDirectory();
+
+    @Inject
+    protected abstract FileSystemOperations getFileSystemOperations();
+
+    @TaskAction
+    public void stage() throws IOException {
+      ModuleVersionIdentifier identity = getProjectIdentity().get();
+      File stagingDirectory = getStagingDirectory().get().getAsFile();
+      getFileSystemOperations().delete(spec -> spec.delete(stagingDirectory));
+      Path versionDirectory = stagingDirectory.toPath().resolve(versionPath(identity));
+      Files.createDirectories(versionDirectory);
+
+      Map<String, File> artifacts = getNamedArtifacts().get();
+      artifacts.entrySet().parallelStream().forEach(artifact -> {
+        Path staged = versionDirectory.resolve(artifact.getKey());
+        try {
+          Checksums.copy(artifact.getValue().toPath(), staged).writeSidecars(staged);
+        } catch (IOException e) {
+          throw new UncheckedIOException("Failed to stage " + artifact.getValue(), e);
+        }
+      });
+      getLogger().info("Staged {} artifacts of {} in {}", artifacts.size(), identity, versionDirectory);
+    }
+
+    static String modulePath(ModuleVersionIdentifier identity) {
+      return identity.getGroup().replace('.', '/') + "/" + identity.getName();
+    }
+
+    static String versionPath(ModuleVersionIdentifier identity) {
+      return modulePath(identity) + "/" + identity.getVersion();
+    }
+  }
+
+  /**
+   * Publishes a staged publication to a Maven repository, uploading the staged artifacts and checksums verbatim and
+   * then updating the artifact's {@code maven-metadata.xml}.
+   * <p>
+   * With {@link #getSkipUnchanged() skipUnchanged} enabled, the repository's {@code .sha256} sidecar of each artifact
+   * is fetched first, and artifacts whose checksum matches the staged one are not uploaded again. If every artifact is
+   * skipped, the metadata is left untouched too.
+   * <p>
+   * Snapshot artifacts are uploaded under the timestamped names of a new snapshot build, recorded in the version level
+   * {@code maven-metadata.xml}. A snapshot is only skipped as a whole: it is compared against the repository's current
+   * snapshot build, and republished in full if any artifact changed.
+   */
+  public static abstract class PublishStagedPublication extends DefaultTask {
+
+    @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract DirectoryProperty getStagingDirectory();
+
+    @Input
+    public abstract Property<ModuleVersionIdentifier> getProjectIdentity();
+
+    @Input
+    public abstract Property<URI> getRepositoryUrl();
+
+    @Internal
+    public abstract Property<String> getUsername();
+
+    @Internal
+    public abstract Property<String> getPassword();
+
+    @Input
+    public abstract Property<Boolean> getSkipUnchanged();
+
+    @TaskAction
+    public void publish() throws IOException {
+      URI url = getRepositoryUrl().get();
+      RepositoryTransport repository = RepositoryTransport.of(url, getUsername().getOrNull(), getPassword().getOrNull());
+      Path staging = getStagingDirectory().get().getAsFile().toPath();
+
+      List<Path> artifacts;
+      try (Stream<Path> walk = Files.walk(staging)) {
+        artifacts = walk.filter(Files::isRegularFile).filter(file -> Arrays.stream(Checksums.Algorithm.values())
+            .noneMatch(algorithm -> file.getFileName().toString().endsWith("." + algorithm.getExtension()))).sorted().collect(Collectors.toList());
+      }
+
+      ModuleVersionIdentifier identity = getProjectIdentity().get();
+      boolean snapshot = MavenMetadata.isSnapshot(identity.getVersion());
+      String versionMetadata = StagePublication.versionPath(identity) + "/" + MavenMetadata.FILE_NAME;
+      MavenMetadata.Snapshot current = snapshot ? MavenMetadata.currentSnapshot(repository.get(versionMetadata)) : null;
+      MavenMetadata.Snapshot next = snapshot ? MavenMetadata.Snapshot.next(current) : null;
+
+      Set<Path> unchanged = new HashSet<>();
+      if (getSkipUnchanged().get() && (current != null || !snapshot)) {
+        for (Path artifact : artifacts) {
+          if (isUnchanged(repository, remotePath(staging, artifact, identity, current), artifact)) {
+            unchanged.add(artifact);
+          }
+        }
+        if (snapshot && unchanged.size() < artifacts.size()) {
+          unchanged.clear();
+        }
+      }
+
+      int skipped = 0;
+      long skippedBytes = 0;
+      for (Path artifact : artifacts) {
+        String path = remotePath(staging, artifact, identity, next);
+        if (unchanged.contains(artifact)) {
+          getLogger().info("Skipping unchanged {}", path);
+          skipped++;
+          skippedBytes += Files.size(artifact);
+        } else {
+          repository.put(path, artifact);
+          for (Checksums.Algorithm algorithm : Checksums.Algorithm.values()) {
+            Path sidecar = Checksums.sidecar(artifact, algorithm);
+            repository.put(remotePath(staging, sidecar, identity, next), sidecar);
+          }
+        }
+      }
+
+      if (skipped < artifacts.size()) {
+        if (snapshot) {
+          List<String> fileNames = artifacts.stream().map(artifact -> artifact.getFileName().toString()).collect(Collectors.toList());
+          putWithChecksums(repository, versionMetadata, MavenMetadata.snapshot(identity.getGroup(), identity.getName(), identity.getVersion(), next, fileNames));
+        }
+        String metadata = StagePublication.modulePath(identity) + "/" + MavenMetadata.FILE_NAME;
+        putWithChecksums(repository, metadata, MavenMetadata.update(repository.get(metadata), identity.getGroup(), identity.getName(), identity.getVersion()));
+      }
+
+      if (getSkipUnchanged().get()) {
+        getLogger().lifecycle("Skipped {} of {} unchanged artifacts of {} ({} bytes not uploaded to {})", skipped, artifacts.size(), identity, skippedBytes, url);
+      }
+      getLogger().info("Published {} staged artifacts of {} to {}", artifacts.size() - skipped, identity, url);
+    }
+
+    private static boolean isUnchanged(RepositoryTransport repository, String path, Path artifact) throws IOException {
+      byte[] remote = repository.get(path + "." + Checksums.Algorithm.SHA256.getExtension());
+      if (remote == null) {
+        return false;
+      } else {
+        String local = new String(Files.readAllBytes(Checksums.sidecar(artifact, Checksums.Algorithm.SHA256)), StandardCharsets.US_ASCII).trim();
+        String[] tokens = new String(remote, StandardCharsets.US_ASCII).trim().split("\\s+");
+        return tokens[0].equalsIgnoreCase(local);
+      }
+    }
+
+    private static void putWithChecksums(RepositoryTransport repository, String path, byte[] content) throws IOException {
+      repository.put(path, content);
+      Checksums checksums = Checksums.of(content);
+      for (Checksums.Algorithm algorithm : Checksums.Algorithm.values()) {
+        repository.put(path + "." + algorithm.getExtension(), checksums.get(algorithm).getBytes(StandardCharsets.US_ASCII));
+      }
+    }
+
+    /*
+     * Staged snapshot files are named after the -SNAPSHOT version, which the given snapshot build's unique version
+     * replaces in the repository.
+     */
+    private static String remotePath(Path staging, Path file, ModuleVersionIdentifier identity, MavenMetadata.Snapshot snapshot) {
+      String path = staging.relativize(file).toString().replace(File.separatorChar, '/');
+      if (snapshot == null) {
+        return path;
+      } else {
+        int name = path.lastIndexOf('/') + 1;
+        String prefix = identity.getName() + "-" + identity.getVersion();
+        return path.substring(0, name) + identity.getName() + "-" + snapshot.version(identity.getVersion()) + path.substring(name + prefix.length());
       }
     }
   }
@@ -1,32 +1,553 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
 package org.terracotta.build.plugins;
 
+import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.version.MavenVersion;
+import aQute.service.reporter.Report;
+import com.github.jengelman.gradle.plugins.shadow.relocation.RelocateClassContext;
+import com.github.jengelman.gradle.plugins.shadow.relocation.Relocator;
 import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar;
 import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.ArtifactCollection;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ProjectComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.artifacts.transform.CacheableTransform;
+import org.gradle.api.artifacts.transform.InputArtifact;
+import org.gradle.api.artifacts.transform.TransformAction;
+import org.gradle.api.artifacts.transform.TransformOutputs;
+import org.gradle.api.artifacts.transform.TransformParameters;
+import org.gradle.api.artifacts.type.ArtifactTypeDefinition;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemLocation;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.plugins.BasePlugin;
+import org.gradle.api.plugins.BasePluginExtension;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.WorkResults;
+import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+import org.terracotta.build.archive.ZipReader;
+import org.terracotta.build.archive.ZipWriter;
 import org.terracotta.build.plugins.packaging.OsgiManifestJarExtension;
 import org.terracotta.build.plugins.packaging.PackageInternal;
+import org.terracotta.build.plugins.packaging.PackageJar;
 import org.terracotta.build.plugins.packaging.PackagingExtension;
 import org.terracotta.build.plugins.packaging.PackagingExtensionInternal;
 
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.gradle.api.artifacts.type.ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE;
+
 public class OsgiPackagePlugin implements Plugin<Project> {
 
+  public static final String OSGI_EXPORTS_TYPE = "osgi-exports";
+
   @Override
   public void apply(Project project) {
     project.getPlugins().apply(PackagePlugin.class);
 
+    /*
+     * Export analysis runs once per distinct artifact (transform outputs are keyed by the artifact's content), so
+     * repeat builds and other projects bundling the same dependencies do not open those jars again.
+     */
+    project.getDependencies().registerTransform(OsgiExports.class, spec -> {
+      spec.getFrom().attribute(ARTIFACT_TYPE_ATTRIBUTE, ArtifactTypeDefinition.JAR_TYPE);
+      spec.getTo().attribute(ARTIFACT_TYPE_ATTRIBUTE, OSGI_EXPORTS_TYPE);
+    });
+    project.getDependencies().registerTransform(OsgiExports.class, spec -> {
+      spec.getFrom().attribute(ARTIFACT_TYPE_ATTRIBUTE, ArtifactTypeDefinition.DIRECTORY_TYPE);
+      spec.getTo().attribute(ARTIFACT_TYPE_ATTRIBUTE, OSGI_EXPORTS_TYPE);
+    });
+
     PackagingExtensionInternal packaging = (PackagingExtensionInternal) project.getExtensions().getByType(PackagingExtension.class);
 
-    Action<PackageInternal> osgiSetup = pkg -> project.getTasks().named(pkg.getJarTaskName(), ShadowJar.class).configure(shadow -> {
-      OsgiManifestJarExtension osgi = shadow.getExtensions().create("osgi", OsgiManifestJarExtension.class, shadow);
-      osgi.getClasspath().from(project.getConfigurations().named(pkg.getPackagedRuntimeClasspathConfigurationName()));
-      osgi.getSources().from(pkg.getSourcesTaskName());
-      osgi.instruction(Constants.BUNDLE_VERSION, new MavenVersion(project.getVersion().toString()).getOSGiVersion().toString());
-    });
+    Action<PackageInternal> osgiSetup = pkg -> {
+      TaskProvider<PackageJar> jar = project.getTasks().named(pkg.getJarTaskName(), PackageJar.class);
+      Provider<OsgiManifestJarExtension> osgi = jar.map(shadow -> shadow.getExtensions().getByType(OsgiManifestJarExtension.class));
+      jar.configure(shadow -> {
+        OsgiManifestJarExtension extension = shadow.getExtensions().create("osgi", OsgiManifestJarExtension.class, shadow);
+        extension.getClasspath().from(project.getConfigurations().named(pkg.getPackagedRuntimeClasspathConfigurationName()));
+        extension.getSources().from(pkg.getSourcesTaskName());
+        extension.instruction(Constants.BUNDLE_VERSION, new MavenVersion(project.getVersion().toString()).getOSGiVersion().toString());
+
+        /*
+         * The jar task output is only an intermediate: the bundle task stamps the manifest into the final archive.
+         */
+        shadow.getDestinationDirectory().set(project.getLayout().getBuildDirectory().dir("osgi/" + shadow.getName()));
+      });
+
+      TaskProvider<OsgiManifest> manifest = project.getTasks().register(pkg.getOsgiManifestTaskName(), OsgiManifest.class, task -> {
+        task.setDescription("Calculates the OSGi bundle manifest of the " + jar.getName() + " archive.");
+        task.getBundleContents().from(jar.flatMap(Jar::getArchiveFile));
+        task.getClasspath().from(osgi.map(OsgiManifestJarExtension::getClasspath));
+        task.getSources().from(osgi.map(OsgiManifestJarExtension::getSources));
+        task.getInstructions().set(osgi.flatMap(OsgiManifestJarExtension::getInstructions));
+        task.getRelocators().set(jar.flatMap(ShadowJar::getRelocators));
+        Provider<List<ArtifactCollection>> exports = jar.flatMap(PackageJar::getConfigurations)
+            .map(configurations -> configurations.stream().map(c -> exports(c, pkg.packagedComponents())).collect(toList()));
+        task.getExports().from(exports.map(collections -> collections.stream().map(ArtifactCollection::getArtifactFiles).collect(toList())));
+        task.getExportArtifacts().set(exports.flatMap(collections -> collections.stream().map(ArtifactCollection::getResolvedArtifacts)
+            .reduce(OsgiPackagePlugin::union).orElse(project.provider(Collections::emptySet))));
+        task.getDestinationDir().convention(project.getLayout().getBuildDirectory().dir("osgi/" + task.getName()));
+        task.getBndClasspath().from(project.provider(OsgiPackagePlugin::bndLibrary));
+      });
+
+      project.getTasks().register(pkg.getBundleTaskName(), BundleJar.class, task -> {
+        task.setDescription("Assembles the OSGi bundle of the " + jar.getName() + " archive.");
+        task.setGroup(BasePlugin.BUILD_GROUP);
+        task.getJar().set(jar.flatMap(Jar::getArchiveFile));
+        task.getBundleManifest().set(manifest.flatMap(OsgiManifest::getDestinationDir));
+        task.getArchiveBaseName().set(jar.flatMap(Jar::getArchiveBaseName));
+        task.getArchiveAppendix().set(jar.flatMap(Jar::getArchiveAppendix));
+        task.getArchiveVersion().set(jar.flatMap(Jar::getArchiveVersion));
+        task.getArchiveClassifier().set(jar.flatMap(Jar::getArchiveClassifier));
+        task.getArchiveExtension().set(jar.flatMap(Jar::getArchiveExtension));
+        task.getDestinationDirectory().set(project.getExtensions().getByType(BasePluginExtension.class).getLibsDirectory());
+      });
+      pkg.getArchiveTaskName().set(pkg.getBundleTaskName());
+    };
 
     osgiSetup.execute(packaging.getDefaultPackage());
     packaging.getVariants().all(osgiSetup);
   }
+
+  /**
+   * Summarizes the exports of an artifact.
+   * <p>
+   * The output is a small text file holding either the artifact's own {@code Export-Package} header, as a single
+   * {@value #EXPORT_PREFIX} line, or (for a plain jar) one {@value #PACKAGE_PREFIX} line per contained package.
+   */
+  @CacheableTransform
+  public abstract static class OsgiExports implements TransformAction<TransformParameters.None> {
+
+    public static final String EXPORT_PREFIX = "export ";
+    public static final String PACKAGE_PREFIX = "package ";
+
+    @InputArtifact
+    @Classpath
+    public abstract Provider<FileSystemLocation> getArtifact();
+
+    @Override
+    public void transform(TransformOutputs outputs) {
+      File artifact = getArtifact().get().getAsFile();
+      if (!artifact.exists()) {
+        return;
+      }
+      List<String> lines = new ArrayList<>();
+      try (aQute.bnd.osgi.Jar bndJar = new aQute.bnd.osgi.Jar(artifact)) {
+        String exportHeader = bndJar.getManifest() == null ? null : bndJar.getManifest().getMainAttributes().getValue(Constants.EXPORT_PACKAGE);
+        if (exportHeader == null) {
+          bndJar.getPackages().stream().filter(p -> !(p.startsWith("META-INF") || p.startsWith("OSGI-INF") || p.isEmpty()))
+              .sorted().forEach(p -> lines.add(PACKAGE_PREFIX + p));
+        } else {
+          lines.add(EXPORT_PREFIX + exportHeader);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to analyze " + artifact, e);
+      } catch (Exception e) {
+        throw new IllegalStateException("Failed to analyze " + artifact, e);
+      }
+
+      try {
+        Files.write(outputs.file(artifact.getName() + "." + OSGI_EXPORTS_TYPE).toPath(), lines, StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to write exports of " + artifact, e);
+      }
+    }
+  }
+
+  /*
+   * bnd runs from the jars the plugin itself was loaded with: nothing is resolved from the build's repositories, and
+   * the version cannot drift from the plugin's own bndlib dependency.
+   */
+  private static Set<File> bndLibrary() {
+    Set<File> classpath = new LinkedHashSet<>();
+    for (String marker : new String[] {"aQute.bnd.osgi.Builder", "aQute.bnd.exceptions.Exceptions"}) {
+      try {
+        CodeSource source = Class.forName(marker, false, OsgiPackagePlugin.class.getClassLoader()).getProtectionDomain().getCodeSource();
+        if (source != null) {
+          classpath.add(new File(source.getLocation().toURI()));
+        }
+      } catch (ClassNotFoundException | URISyntaxException e) {
+        // not a separate artifact in this bnd version
+      }
+    }
+    return classpath;
+  }
+
+  private static ArtifactCollection exports(Configuration configuration, Spec<ComponentIdentifier> packagedComponents) {
+    return configuration.getIncoming().artifactView(view -> view.componentFilter(packagedComponents)
+        .getAttributes().attribute(ARTIFACT_TYPE_ATTRIBUTE, OSGI_EXPORTS_TYPE)).getArtifacts();
+  }
+
+  private static Provider<Set<ResolvedArtifactResult>> union(Provider<Set<ResolvedArtifactResult>> a, Provider<Set<ResolvedArtifactResult>> b) {
+    return a.zip(b, (x, y) -> {
+      Set<ResolvedArtifactResult> union = new LinkedHashSet<>(x);
+      union.addAll(y);
+      return union;
+    });
+  }
+
+  /**
+   * Calculates the OSGi manifest of a bundle.
+   * <p>
+   * The output directory holds the calculated {@value #MANIFEST}, the names of the archive resources bnd retained, and
+   * any resources bnd added to the bundle (e.g. through {@code -includeresource}).
+   */
+  @CacheableTask
+  public abstract static class OsgiManifest extends DefaultTask {
+
+    static final String MANIFEST = "MANIFEST.MF";
+    static final String RETAINED = "retained.txt";
+    static final String ADDITIONS = "additions";
+
+    private static final Pattern OSGI_EXPORT_PATTERN = Pattern.compile("([^;,]+((?:;[^,:=]+:?=\"[^\"]+\")*))(?:,|$)");
+
+    @Classpath
+    public abstract ConfigurableFileCollection getBundleContents();
+
+    @Classpath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getSources();
+
+    @Input
+    public abstract MapProperty<String, String> getInstructions();
+
+    /**
+     * The relocators of the bundled jar: both the package relocations and any relocators configured directly on the
+     * jar task.
+     *
+     * @return jar relocators
+     */
+    @Nested
+    public abstract SetProperty<Relocator> getRelocators();
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract ConfigurableFileCollection getExports();
+
+    @Internal
+    public abstract SetProperty<ResolvedArtifactResult> getExportArtifacts();
+
+    /**
+     * The bnd library, which runs in its own classloader so that it cannot conflict with any other bnd version on the
+     * build classpath.
+     *
+     * @return bnd classpath
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getBndClasspath();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getDestinationDir();
+
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
+    @Inject
+    protected abstract FileSystemOperations getFileSystemOperations();
+
+    @TaskAction
+    public void calculate() throws IOException {
+      File outputDir = getDestinationDir().get().getAsFile();
+      getFileSystemOperations().delete(spec -> spec.delete(outputDir));
+      Files.createDirectories(outputDir.toPath());
+
+      Map<String, String> instructions = mergeInstructions(getInstructions().get());
+
+      WorkQueue queue = getWorkerExecutor().classLoaderIsolation(spec -> spec.getClasspath().from(getBndClasspath()));
+      queue.submit(BndBuild.class, parameters -> {
+        parameters.getArchive().set(getBundleContents().getSingleFile());
+        parameters.getClasspath().from(getClasspath());
+        parameters.getSources().from(getSources());
+        parameters.getInstructions().set(instructions);
+        parameters.getOutputDir().set(outputDir);
+      });
+    }
+
+    private Map<String, String> mergeInstructions(Map<String, String> userInstructions) throws IOException {
+      Map<String, String> mergedInstructions = new HashMap<>(userInstructions);
+      String userExportPackage = mergedInstructions.remove(Constants.EXPORT_PACKAGE);
+
+      /*
+       * Step 1: apply the local instructions (should just be negations)
+       */
+      List<String> exports = new ArrayList<>();
+      exports.add(userExportPackage);
+
+      /*
+       * Step 2: derive instructions from the export analysis of each input artifact (see OsgiExports).
+       */
+      List<Relocator> relocators = new ArrayList<>(getRelocators().get());
+      for (ResolvedArtifactResult artifact : getExportArtifacts().get()) {
+        for (String line : Files.readAllLines(artifact.getFile().toPath(), StandardCharsets.UTF_8)) {
+          if (line.startsWith(OsgiExports.PACKAGE_PREFIX)) {
+            String p = relocatePackageName(relocators, line.substring(OsgiExports.PACKAGE_PREFIX.length()));
+            ComponentIdentifier componentIdentifier = artifact.getId().getComponentIdentifier();
+            if (componentIdentifier instanceof ModuleComponentIdentifier) {
+              exports.add("[0-9]?" + p + ";version=\"" + ((ModuleComponentIdentifier) componentIdentifier).getVersion() + "\"");
+            } else if (componentIdentifier instanceof ProjectComponentIdentifier) {
+              exports.add("[0-9]?" + p);
+            } else {
+              throw new IllegalArgumentException("Unhandled component identifier: " + componentIdentifier);
+            }
+          } else if (line.startsWith(OsgiExports.EXPORT_PREFIX)) {
+            // split the export header in to its separate instructions
+            Matcher matcher = OSGI_EXPORT_PATTERN.matcher(line.substring(OsgiExports.EXPORT_PREFIX.length()));
+            while (matcher.find()) {
+              // strip the uses information and let BND calculate it for us again.
+              String export = matcher.group(1).replaceAll(";uses:?=\"[^\"]+\"", "");
+              // prefix the instructions with a no-op regex wildcard to prevent BND treating the pattern as a literal
+              // and overriding any earlier negations
+              exports.add("[0-9]?" + export);
+            }
+          }
+        }
+      }
+
+      mergedInstructions.put(Constants.EXPORT_PACKAGE, exports.stream().distinct().collect(joining(", ")));
+
+      return mergedInstructions;
+    }
+
+    /*
+     * The first relocator that applies wins, as when Shadow relocates the jar contents.
+     */
+    private static String relocatePackageName(List<Relocator> relocators, String packageName) {
+      for (Relocator relocator : relocators) {
+        if (relocator.canRelocateClass(packageName + ".")) {
+          String relocated = relocator.relocateClass(new RelocateClassContext(packageName + "."));
+          return relocated.isEmpty() ? relocated : relocated.substring(0, relocated.length() - 1);
+        }
+      }
+      return packageName;
+    }
+  }
+
+  /**
+   * Runs bnd's analysis of a bundle.
+   * <p>
+   * Each manifest task submits a single item, for its one bundle: the analysis of the individual input artifacts has
+   * already happened in the {@link OsgiExports} transform. Only the manifests of different bundles can be calculated
+   * concurrently.
+   * <p>
+   * bnd reads the archive in place and writes nothing to it: the results are written to the output directory in the
+   * layout described by {@link OsgiManifest}.
+   */
+  public abstract static class BndBuild implements WorkAction<BndBuild.Parameters> {
+
+    public interface Parameters extends WorkParameters {
+
+      RegularFileProperty getArchive();
+
+      ConfigurableFileCollection getClasspath();
+
+      ConfigurableFileCollection getSources();
+
+      MapProperty<String, String> getInstructions();
+
+      DirectoryProperty getOutputDir();
+    }
+
+    @Override
+    public void execute() {
+      File archiveFile = getParameters().getArchive().get().getAsFile();
+      Path output = getParameters().getOutputDir().get().getAsFile().toPath();
+      Logger logger = Logging.getLogger(BndBuild.class);
+      try (Builder builder = new Builder()) {
+        try (aQute.bnd.osgi.Jar bundleJar = new aQute.bnd.osgi.Jar(archiveFile)) {
+          Set<String> original = new HashSet<>(bundleJar.getResources().keySet());
+          builder.setJar(bundleJar);
+          builder.setClasspath(getParameters().getClasspath().getFiles());
+          builder.setSourcepath(getParameters().getSources().getFiles().toArray(new File[0]));
+          builder.addProperties(getParameters().getInstructions().get());
+
+          try (aQute.bnd.osgi.Jar builtJar = builder.build()) {
+            if (!builder.isOk()) {
+              builder.getErrors().forEach((String msg) -> {
+                Report.Location location = builder.getLocation(msg);
+                if ((location != null) && (location.file != null)) {
+                  logger.error("{}:{}: error: {}", location.file, location.line, msg);
+                } else {
+                  logger.error("error  : {}", msg);
+                }
+              });
+              throw new GradleException("Bundle " + archiveFile.getName() + " has errors");
+            }
+
+            Path additions = Files.createDirectories(output.resolve(OsgiManifest.ADDITIONS));
+            try (OutputStream manifest = Files.newOutputStream(output.resolve(OsgiManifest.MANIFEST))) {
+              builtJar.writeManifest(manifest);
+            }
+            Map<String, aQute.bnd.osgi.Resource> resources = builtJar.getResources();
+            Files.write(output.resolve(OsgiManifest.RETAINED), resources.keySet().stream().sorted().collect(toList()), StandardCharsets.UTF_8);
+            for (Map.Entry<String, aQute.bnd.osgi.Resource> resource : resources.entrySet()) {
+              if (!original.contains(resource.getKey()) && !JarFile.MANIFEST_NAME.equals(resource.getKey())) {
+                Path target = additions.resolve(resource.getKey()).normalize();
+                if (!target.startsWith(additions)) {
+                  throw new GradleException("Bundle resource outside of the archive root: " + resource.getKey());
+                }
+                Files.createDirectories(target.getParent());
+                try (OutputStream out = Files.newOutputStream(target)) {
+                  resource.getValue().write(out);
+                }
+              }
+            }
+          }
+        }
+      } catch (GradleException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new GradleException("Error building bundle", e);
+      }
+    }
+  }
+
+  /**
+   * Stamps a calculated OSGi manifest into a jar.
+   * <p>
+   * The manifest is written first and every other retained entry is streamed raw from the jar, followed by any
+   * resources bnd added, so this costs little more than a file copy. Anything else added to this task's own copy spec
+   * (e.g. the POM embedded by the deploy plugin) is appended last.
+   */
+  public abstract static class BundleJar extends Jar {
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getJar();
+
+    @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract DirectoryProperty getBundleManifest();
+
+    @Override
+    protected CopyAction createCopyAction() {
+      Path bundleManifest = getBundleManifest().get().getAsFile().toPath();
+      Path archive = getArchiveFile().get().getAsFile().toPath();
+      Path source = getJar().get().getAsFile().toPath();
+      return stream -> {
+        try {
+          byte[] manifest = Files.readAllBytes(bundleManifest.resolve(OsgiManifest.MANIFEST));
+          Set<String> retained = new HashSet<>(Files.readAllLines(bundleManifest.resolve(OsgiManifest.RETAINED), StandardCharsets.UTF_8));
+          Path additions = bundleManifest.resolve(OsgiManifest.ADDITIONS);
+          List<Path> added;
+          try (Stream<Path> files = Files.walk(additions)) {
+            added = files.filter(Files::isRegularFile).sorted().collect(toList());
+          }
+
+          Files.createDirectories(archive.getParent());
+          try (ZipReader reader = ZipReader.open(source); ZipWriter writer = new ZipWriter(Files.newOutputStream(archive))) {
+            ZipReader.Entry metaInf = reader.getEntry("META-INF/");
+            if (metaInf != null) {
+              writer.copy(reader, metaInf);
+            }
+            writer.entry(JarFile.MANIFEST_NAME, ZipWriter.DEFLATED, ZipWriter.DEFAULT_FILE_MODE, manifest);
+            for (ZipReader.Entry entry : reader.getEntries()) {
+              if (!writer.contains(entry.getName()) && (entry.isDirectory() || retained.contains(entry.getName()))) {
+                writer.copy(reader, entry);
+              }
+            }
+            for (Path addition : added) {
+              String name = additions.relativize(addition).toString().replace(File.separatorChar, '/');
+              writer.entry(name, ZipWriter.DEFLATED, ZipWriter.DEFAULT_FILE_MODE, Files.readAllBytes(addition));
+            }
+            stream.process(details -> {
+              String name = details.getRelativePath().getPathString() + (details.isDirectory() ? "/" : "");
+              if (!writer.contains(name)) {
+                try {
+                  if (details.isDirectory()) {
+                    writer.directory(name, ZipWriter.DEFAULT_DIRECTORY_MODE);
+                  } else {
+                    ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    details.copyTo(content);
+                    writer.entry(name, ZipWriter.DEFLATED, ZipWriter.DEFAULT_FILE_MODE, content.toByteArray());
+                  }
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              }
+            });
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return WorkResults.didWork(true);
+      };
+    }
+  }
 }
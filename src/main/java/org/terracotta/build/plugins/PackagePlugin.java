@@ -18,25 +18,96 @@
 package org.terracotta.build.plugins;
 
 import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
 import org.gradle.api.NamedDomainObjectProvider;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.UncheckedIOException;
 import org.gradle.api.artifacts.ConfigurationContainer;
 import org.gradle.api.artifacts.DependencyScopeConfiguration;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.artifacts.transform.CacheableTransform;
+import org.gradle.api.artifacts.transform.InputArtifact;
+import org.gradle.api.artifacts.transform.TransformAction;
+import org.gradle.api.artifacts.transform.TransformOutputs;
+import org.gradle.api.artifacts.transform.TransformParameters;
+import org.gradle.api.artifacts.type.ArtifactTypeDefinition;
+import org.gradle.api.attributes.Attribute;
 import org.gradle.api.attributes.AttributeCompatibilityRule;
 import org.gradle.api.attributes.AttributesSchema;
 import org.gradle.api.attributes.CompatibilityCheckDetails;
 import org.gradle.api.attributes.Usage;
 import org.gradle.api.component.AdhocComponentWithVariants;
 import org.gradle.api.component.SoftwareComponentFactory;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.DuplicateFileCopyingException;
+import org.gradle.api.file.DuplicatesStrategy;
+import org.gradle.api.file.FileSystemLocation;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.internal.artifacts.JavaEcosystemSupport;
+import org.gradle.api.java.archives.internal.ManifestInternal;
+import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.plugins.BasePlugin;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
+import org.gradle.api.tasks.util.PatternSet;
+import org.terracotta.build.FileMirror;
+import org.terracotta.build.archive.EntryPatterns;
+import org.terracotta.build.archive.ZipReader;
+import org.terracotta.build.archive.ZipWriter;
 import org.terracotta.build.plugins.packaging.PackageInternal;
+import org.terracotta.build.plugins.packaging.PackageRelocator;
 import org.terracotta.build.plugins.packaging.PackagingExtension;
 import org.terracotta.build.plugins.packaging.PackagingExtensionInternal;
 
 import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import static java.lang.String.format;
+import static java.util.Collections.list;
+import static java.util.stream.Collectors.toList;
+import static org.gradle.api.artifacts.type.ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE;
 import static org.gradle.api.plugins.JavaPlugin.API_CONFIGURATION_NAME;
 import static org.gradle.api.plugins.JavaPlugin.COMPILE_ONLY_API_CONFIGURATION_NAME;
 import static org.gradle.api.plugins.JavaPlugin.IMPLEMENTATION_CONFIGURATION_NAME;
@@ -55,6 +126,15 @@ public abstract class PackagePlugin implements Plugin<Project> {
 
   public static final String COMPONENT_NAME = "package";
   public static final String COMMON_PREFIX = "common";
+  public static final String DEVELOPMENT_MODE_PROPERTY = "org.terracotta.build.package.developmentMode";
+  public static final String EXTRACTED_SOURCES_TYPE = "extracted-sources";
+
+  /**
+   * Relocations applied to an artifact: {@link #NOT_RELOCATED} for ordinary jars, or a package specific value for jars
+   * pre-relocated by {@link RelocateJar}.
+   */
+  public static final Attribute<String> RELOCATION_ATTRIBUTE = Attribute.of("org.terracotta.build.relocation", String.class);
+  public static final String NOT_RELOCATED = "none";
 
   @Inject
   protected abstract SoftwareComponentFactory getSoftwareComponentFactory();
@@ -83,7 +163,24 @@ public abstract class PackagePlugin implements Plugin<Project> {
     configurations.dependencyScope(camelPrefix(COMMON_PREFIX, PROVIDED_CONFIGURATION_NAME),
         c -> c.setDescription("'Provided' API dependencies for all packaged artifacts."));
 
+    /*
+     * Source jars are extracted once per distinct jar (Gradle keys transform outputs by the artifact's content hash),
+     * and the extractions for a package are scheduled in parallel ahead of its sources task.
+     */
+    project.getDependencies().registerTransform(ExtractSources.class, spec -> {
+      spec.getFrom().attribute(ARTIFACT_TYPE_ATTRIBUTE, ArtifactTypeDefinition.JAR_TYPE);
+      spec.getTo().attribute(ARTIFACT_TYPE_ATTRIBUTE, EXTRACTED_SOURCES_TYPE);
+    });
+    project.getDependencies().registerTransform(ExtractSources.class, spec -> {
+      spec.getFrom().attribute(ARTIFACT_TYPE_ATTRIBUTE, ArtifactTypeDefinition.DIRECTORY_TYPE);
+      spec.getTo().attribute(ARTIFACT_TYPE_ATTRIBUTE, EXTRACTED_SOURCES_TYPE);
+    });
+
+    project.getDependencies().getAttributesSchema().attribute(RELOCATION_ATTRIBUTE);
+    project.getDependencies().getArtifactTypes().maybeCreate(ArtifactTypeDefinition.JAR_TYPE).getAttributes().attribute(RELOCATION_ATTRIBUTE, NOT_RELOCATED);
+
     PackagingExtensionInternal packaging = (PackagingExtensionInternal) project.getExtensions().create(PackagingExtension.class, "packaging", PackagingExtensionInternal.class);
+    packaging.getDevelopmentMode().convention(project.getProviders().gradleProperty(DEVELOPMENT_MODE_PROPERTY).map(Boolean::parseBoolean).orElse(false));
     packaging.getDefaultPackage().create();
     packaging.getVariants().all(PackageInternal::create);
   }
@@ -93,6 +190,431 @@ public abstract class PackagePlugin implements Plugin<Project> {
         strategy -> strategy.getCompatibilityRules().add(UnpackagedJavaRuntimeCompatibility.class));
   }
 
+  /**
+   * Extracts a source jar to a directory. Directories are passed through untouched.
+   */
+  @CacheableTransform
+  public abstract static class ExtractSources implements TransformAction<TransformParameters.None> {
+
+    @InputArtifact
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract Provider<FileSystemLocation> getSourceArtifact();
+
+    @Override
+    public void transform(TransformOutputs outputs) {
+      File artifact = getSourceArtifact().get().getAsFile();
+      if (artifact.isDirectory()) {
+        outputs.dir(artifact);
+      } else if (artifact.isFile()) {
+        Path root = outputs.dir(artifact.getName().replaceFirst("\\.jar$", "")).toPath();
+        try (ZipFile zip = new ZipFile(artifact)) {
+          for (ZipEntry entry : list(zip.entries())) {
+            Path target = root.resolve(entry.getName()).normalize();
+            if (!target.startsWith(root)) {
+              throw new GradleException("Source archive " + artifact + " contains an entry outside of its root: " + entry.getName());
+            } else if (entry.isDirectory()) {
+              Files.createDirectories(target);
+            } else {
+              Files.createDirectories(target.getParent());
+              try (InputStream input = zip.getInputStream(entry)) {
+                Files.copy(input, target, StandardCopyOption.REPLACE_EXISTING);
+              }
+            }
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException("Failed to extract " + artifact, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Applies a package's relocations to a jar, so that the package's shadow jar only has to merge its inputs.
+   */
+  @CacheableTransform
+  public abstract static class RelocateJar implements TransformAction<RelocateJar.Parameters> {
+
+    public interface Parameters extends TransformParameters {
+
+      @Input
+      MapProperty<String, String> getRelocations();
+    }
+
+    @InputArtifact
+    @Classpath
+    public abstract Provider<FileSystemLocation> getJar();
+
+    @Override
+    public void transform(TransformOutputs outputs) {
+      File jar = getJar().get().getAsFile();
+      PackageRelocator relocator = new PackageRelocator(getParameters().getRelocations().get());
+      if (relocator.isEmpty()) {
+        outputs.file(jar);
+      } else {
+        File relocated = outputs.file(jar.getName());
+        try {
+          relocator.relocateJar(jar.toPath(), relocated.toPath());
+        } catch (IOException e) {
+          throw new UncheckedIOException("Failed to relocate " + jar, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Incrementally assembles a directory from a set of extracted source trees.
+   * <p>
+   * Where trees overlap the first occurrence wins, consistent with the shadowed classes themselves. Only files that
+   * differ from the previous assembly are copied.
+   */
+  public abstract static class AssembleSources extends DefaultTask {
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getSourceTrees();
+
+    @Input
+    public abstract SetProperty<String> getExcludes();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getDestinationDir();
+
+    @Inject
+    protected abstract ObjectFactory getObjectFactory();
+
+    @TaskAction
+    void assemble() throws IOException {
+      PatternSet excludes = new PatternSet().exclude(getExcludes().get());
+      Map<String, Path> sources = new LinkedHashMap<>();
+      for (File root : getSourceTrees().getFiles()) {
+        if (root.isDirectory()) {
+          getObjectFactory().fileTree().from(root).matching(excludes).visit(file -> {
+            if (!file.isDirectory()) {
+              sources.putIfAbsent(file.getRelativePath().getPathString(), file.getFile().toPath());
+            }
+          });
+        }
+      }
+
+      FileMirror mirror = FileMirror.mirror(sources, getDestinationDir().get().getAsFile().toPath(), false);
+      getLogger().info("Sources updated: {}", mirror);
+    }
+  }
+
+  /**
+   * Extracts the classes and resources of versioned package contents into {@code META-INF/versions/<release>/}, ready
+   * to be merged into a multi-release package jar.
+   * <p>
+   * The package relocations are applied here, whether or not the base contents are pre-relocated, so that versioned
+   * classes always reference the same relocated names as the base classes. {@code META-INF} content (manifests,
+   * signatures and service files) of the versioned contents is dropped: services are only read from the base of a
+   * multi-release jar.
+   */
+  @CacheableTask
+  public abstract static class VersionedContents extends DefaultTask {
+
+    @Classpath
+    public abstract ConfigurableFileCollection getContents();
+
+    @Input
+    public abstract Property<Integer> getRelease();
+
+    @Input
+    public abstract MapProperty<String, String> getRelocations();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getDestinationDir();
+
+    @Inject
+    protected abstract FileSystemOperations getFileSystemOperations();
+
+    @TaskAction
+    void extract() throws IOException {
+      PackageRelocator relocator = new PackageRelocator(getRelocations().get());
+      Path destination = getDestinationDir().get().getAsFile().toPath();
+      getFileSystemOperations().delete(spec -> spec.delete(destination));
+      Path versionRoot = destination.resolve("META-INF/versions/" + getRelease().get());
+
+      for (File file : getContents()) {
+        if (file.isFile()) {
+          try (ZipReader reader = ZipReader.open(file.toPath())) {
+            for (ZipReader.Entry entry : reader.getEntries()) {
+              if (!entry.isDirectory() && !entry.getName().startsWith("META-INF/")) {
+                try (InputStream in = reader.getInputStream(entry)) {
+                  extract(relocator, versionRoot, entry.getName(), in);
+                }
+              }
+            }
+          }
+        } else if (file.isDirectory()) {
+          Path root = file.toPath();
+          try (Stream<Path> files = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+              String name = root.relativize(path).toString().replace(File.separatorChar, '/');
+              if (!name.startsWith("META-INF/")) {
+                try (InputStream in = Files.newInputStream(path)) {
+                  extract(relocator, versionRoot, name, in);
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+
+    private static void extract(PackageRelocator relocator, Path versionRoot, String name, InputStream in) throws IOException {
+      Path target = versionRoot.resolve(relocator.relocatePath(name)).normalize();
+      if (!target.startsWith(versionRoot)) {
+        throw new GradleException("Entry " + name + " escapes the versioned contents directory");
+      } else if (Files.exists(target)) {
+        return;
+      }
+      Files.createDirectories(target.getParent());
+      if (name.endsWith(".class") && !relocator.isEmpty()) {
+        Files.write(target, relocator.relocateClass(readAllBytes(in)));
+      } else {
+        Files.copy(in, target);
+      }
+    }
+
+    private static byte[] readAllBytes(InputStream in) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        bytes.write(buffer, 0, read);
+      }
+      return bytes.toByteArray();
+    }
+  }
+
+  /**
+   * Analyses the contents of a package jar.
+   * <p>
+   * The report attributes each packaged entry to the contents artifact it came from (the first artifact containing it),
+   * and lists classes present in more than one contents artifact, packaged classes also present in the provided
+   * dependencies, the largest entries and the overall compression ratio. Size and class count budgets fail the task
+   * (after the report is written) when exceeded.
+   */
+  @CacheableTask
+  public abstract static class PackageReport extends DefaultTask {
+
+    private static final String GENERATED = "(generated)";
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getPackageJar();
+
+    @Classpath
+    public abstract ConfigurableFileCollection getContents();
+
+    @Internal
+    public abstract SetProperty<ResolvedArtifactResult> getContentArtifacts();
+
+    @Classpath
+    public abstract ConfigurableFileCollection getProvided();
+
+    /**
+     * Relocations applied by the jar task, and so not yet applied to the contents.
+     *
+     * @return relocations applied by the jar task
+     */
+    @Input
+    public abstract MapProperty<String, String> getRelocations();
+
+    @Input
+    public abstract Property<Integer> getLargestEntries();
+
+    /**
+     * Maximum size of the package jar in bytes.
+     *
+     * @return size budget
+     */
+    @Input
+    @Optional
+    public abstract Property<Long> getSizeBudget();
+
+    @Input
+    @Optional
+    public abstract Property<Integer> getClassCountBudget();
+
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
+
+    @TaskAction
+    void report() throws IOException {
+      PackageRelocator relocator = new PackageRelocator(getRelocations().get());
+      Map<String, String> origins = new HashMap<>();
+      Map<String, Set<String>> classOrigins = new TreeMap<>();
+      for (ResolvedArtifactResult artifact : getContentArtifacts().get()) {
+        String origin = artifact.getId().getComponentIdentifier().getDisplayName();
+        for (String name : entryNames(artifact.getFile())) {
+          String relocated = relocator.relocateEntryName(name);
+          origins.putIfAbsent(relocated, origin);
+          if (relocated.endsWith(".class") && !relocated.endsWith("module-info.class")) {
+            classOrigins.computeIfAbsent(relocated, k -> new TreeSet<>()).add(origin);
+          }
+        }
+      }
+      Set<String> providedClasses = new HashSet<>();
+      for (File provided : getProvided()) {
+        entryNames(provided).stream().filter(name -> name.endsWith(".class")).forEach(providedClasses::add);
+      }
+
+      File jar = getPackageJar().get().getAsFile();
+      Map<String, long[]> perOrigin = new TreeMap<>();
+      List<ZipReader.Entry> files = new ArrayList<>();
+      List<String> providedDuplicates = new ArrayList<>();
+      long compressed = 0;
+      long uncompressed = 0;
+      int classes = 0;
+      try (ZipReader reader = ZipReader.open(jar.toPath())) {
+        for (ZipReader.Entry entry : reader.getEntries()) {
+          if (entry.isDirectory()) {
+            continue;
+          }
+          files.add(entry);
+          compressed += entry.getCompressedSize();
+          uncompressed += entry.getSize();
+          boolean isClass = entry.getName().endsWith(".class");
+          if (isClass) {
+            classes++;
+            if (providedClasses.contains(entry.getName())) {
+              providedDuplicates.add(entry.getName());
+            }
+          }
+          long[] totals = perOrigin.computeIfAbsent(origins.getOrDefault(entry.getName(), GENERATED), k -> new long[3]);
+          totals[0] += entry.getSize();
+          totals[1] += entry.getCompressedSize();
+          totals[2] += isClass ? 1 : 0;
+        }
+      }
+
+      List<String> lines = new ArrayList<>();
+      lines.add("Package jar: " + jar.getName());
+      lines.add(format("Size: %d bytes (%d bytes uncompressed, compression ratio %.1f%%)", jar.length(), uncompressed,
+          uncompressed == 0 ? 100.0 : 100.0 * compressed / uncompressed));
+      lines.add(format("Entries: %d files, %d classes", files.size(), classes));
+      lines.add("");
+      lines.add("Contents by origin (uncompressed bytes, compressed bytes, classes):");
+      perOrigin.entrySet().stream().sorted(Map.Entry.comparingByValue(Comparator.comparingLong((long[] t) -> t[0]).reversed()))
+          .forEach(e -> lines.add(format("  %-60s %12d %12d %8d", e.getKey(), e.getValue()[0], e.getValue()[1], e.getValue()[2])));
+      lines.add("");
+      lines.add("Classes in more than one contents artifact (first wins):");
+      classOrigins.forEach((name, from) -> {
+        if (from.size() > 1) {
+          lines.add("  " + name + " " + from);
+        }
+      });
+      lines.add("");
+      lines.add("Packaged classes also in provided dependencies:");
+      providedDuplicates.forEach(name -> lines.add("  " + name));
+      lines.add("");
+      lines.add("Largest entries (uncompressed bytes, compressed bytes):");
+      files.stream().sorted(Comparator.comparingLong(ZipReader.Entry::getSize).reversed()).limit(getLargestEntries().get())
+          .forEach(e -> lines.add(format("  %-60s %12d %12d", e.getName(), e.getSize(), e.getCompressedSize())));
+
+      Path report = getReportFile().get().getAsFile().toPath();
+      Files.createDirectories(report.getParent());
+      Files.write(report, lines, StandardCharsets.UTF_8);
+
+      List<String> violations = new ArrayList<>();
+      if (getSizeBudget().isPresent() && jar.length() > getSizeBudget().get()) {
+        violations.add(format("size of %d bytes exceeds the budget of %d bytes", jar.length(), getSizeBudget().get()));
+      }
+      if (getClassCountBudget().isPresent() && classes > getClassCountBudget().get()) {
+        violations.add(format("%d classes exceeds the budget of %d classes", classes, getClassCountBudget().get()));
+      }
+      if (!violations.isEmpty()) {
+        throw new GradleException("Package jar " + jar.getName() + " is over budget: " + String.join(", ", violations)
+            + ". See the report at " + report.toUri());
+      }
+    }
+
+    private static List<String> entryNames(File file) throws IOException {
+      if (file.isFile()) {
+        try (ZipReader reader = ZipReader.open(file.toPath())) {
+          return reader.getEntries().stream().filter(e -> !e.isDirectory()).map(ZipReader.Entry::getName).collect(toList());
+        }
+      } else if (file.isDirectory()) {
+        Path root = file.toPath();
+        try (Stream<Path> paths = Files.walk(root)) {
+          return paths.filter(Files::isRegularFile).map(p -> root.relativize(p).toString().replace(File.separatorChar, '/')).collect(toList());
+        }
+      } else {
+        return Collections.emptyList();
+      }
+    }
+  }
+
+  /**
+   * Merges jar archives into a single jar, streaming entries directly from the source archives.
+   * <p>
+   * Entry data is copied raw, without being inflated and deflated again, and the task's exclude patterns and duplicates
+   * strategy are applied as entries are streamed: the first entry of a given name wins, unless the strategy is
+   * {@link DuplicatesStrategy#FAIL} or {@link DuplicatesStrategy#WARN}. The manifests of the merged archives are
+   * replaced by the task's own manifest. Other content configured on the task is ignored.
+   */
+  public abstract static class MergeArchives extends Jar {
+
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    /**
+     * Archives to merge, in priority order.
+     * <p>
+     * Declared as a classpath so that reordering the archives, which changes which duplicate entries win, is an input
+     * change.
+     *
+     * @return archives to merge
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getArchives();
+
+    @Override
+    @TaskAction
+    protected void copy() {
+      Predicate<String> excluded = EntryPatterns.anyMatch(getExcludes());
+      DuplicatesStrategy duplicates = getDuplicatesStrategy();
+      int method = getEntryCompression() == ZipEntryCompression.STORED ? ZipWriter.STORED : ZipWriter.DEFLATED;
+      Path archive = getArchiveFile().get().getAsFile().toPath();
+      try {
+        Files.createDirectories(archive.getParent());
+        try (ZipWriter writer = new ZipWriter(Files.newOutputStream(archive))) {
+          ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+          ManifestInternal manifestInternal = (ManifestInternal) getManifest();
+          manifestInternal.setContentCharset(getManifestContentCharset());
+          manifestInternal.writeTo(manifest);
+          writer.directory("META-INF/", ZipWriter.DEFAULT_DIRECTORY_MODE);
+          writer.entry(MANIFEST, method, ZipWriter.DEFAULT_FILE_MODE, manifest.toByteArray());
+
+          for (File source : getArchives()) {
+            try (ZipReader reader = ZipReader.open(source.toPath())) {
+              for (ZipReader.Entry entry : reader.getEntries()) {
+                String name = entry.getName();
+                if (name.equals(MANIFEST) || excluded.test(name)) {
+                  continue;
+                } else if (writer.contains(name)) {
+                  if (!entry.isDirectory()) {
+                    if (duplicates == DuplicatesStrategy.FAIL) {
+                      throw new DuplicateFileCopyingException("Encountered duplicate path \"" + name + "\" during merge of " + source);
+                    } else if (duplicates == DuplicatesStrategy.WARN) {
+                      getLogger().warn("Encountered duplicate path \"{}\" during merge of {}", name, source);
+                    }
+                  }
+                } else {
+                  writer.copy(reader, entry);
+                }
+              }
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      setDidWork(true);
+    }
+  }
+
   public static class UnpackagedJavaRuntimeCompatibility implements AttributeCompatibilityRule<Usage> {
 
     @Override
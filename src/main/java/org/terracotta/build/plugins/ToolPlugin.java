@@ -20,16 +20,22 @@ package org.terracotta.build.plugins;
 import groovy.text.SimpleTemplateEngine;
 import groovy.text.Template;
 import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
 import org.gradle.api.DomainObjectSet;
+import org.gradle.api.Named;
+import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.attributes.Category;
 import org.gradle.api.attributes.Usage;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.CopySpec;
+import org.gradle.api.file.Directory;
 import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.RegularFile;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.internal.ConventionTask;
 import org.gradle.api.plugins.ExtensionAware;
 import org.gradle.api.plugins.JavaPlugin;
@@ -37,10 +43,17 @@ import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.resources.TextResource;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.Internal;
-import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.Sync;
 import org.gradle.api.tasks.TaskAction;
@@ -48,24 +61,51 @@ import org.gradle.api.tasks.bundling.AbstractArchiveTask;
 import org.gradle.api.tasks.bundling.Jar;
 import org.gradle.internal.os.OperatingSystem;
 import org.gradle.language.base.plugins.LifecycleBasePlugin;
+import org.terracotta.build.ClassLoadTrace;
+import org.terracotta.build.FileMirror;
+import org.terracotta.build.archive.DirectoryArchiver;
+import org.terracotta.build.archive.ZipWriter;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.Writer;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import static java.nio.file.Files.getFileAttributeView;
 import static java.nio.file.Files.newBufferedWriter;
 import static java.nio.file.attribute.PosixFilePermissions.fromString;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.list;
 import static java.util.Collections.nCopies;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.joining;
@@ -94,6 +134,17 @@ import static org.terracotta.build.plugins.packaging.PackageInternal.UNPACKAGED_
  *   classpath = files([])
  *   unixTemplate = resources.text.fromFile('src/tool/start.sh.template', 'UTF-8')
  *   windowsTemplate = resources.text.fromFile('src/tool/start.bat.template', 'UTF-8')
+ *   startupProfile = 'service'
+ *   assemblyMode = 'INCREMENTAL'
+ *   hardLinkLibraries = true
+ *   consolidateClasspath = true
+ *   classLoadOrder = tasks.recordToolClassLoadOrder.classLoadLog
+ *   trainingArguments = ['--help']
+ *   startupProfiles {
+ *     service {
+ *       javaOptions = ['-XX:MaxRAMPercentage=50.0', '-XX:+UseZGC']
+ *     }
+ *   }
  *   extraContents {
  *     into('bin') {
  *       from project.files('src/tool/legacy/bin')
@@ -108,10 +159,14 @@ import static org.terracotta.build.plugins.packaging.PackageInternal.UNPACKAGED_
 public class ToolPlugin implements Plugin<Project> {
 
   public static final String TOOL_CATEGORY = "tool";
+  public static final String DISTRIBUTION_GROUP = "distribution";
 
   private static final String DEFAULT_LIBRARY_PATH = "lib";
   private static final String DEFAULT_SCRIPT_PATH = "bin";
 
+  public static final String CLI_PROFILE = "cli";
+  public static final String SERVICE_PROFILE = "service";
+
   private static final URL DEFAULT_UNIX_TEMPLATE = requireNonNull(ToolPlugin.class.getResource("/tool/start.sh.template"));
   private static final URL DEFAULT_WINDOWS_TEMPLATE = requireNonNull(ToolPlugin.class.getResource("/tool/start.bat.template"));
 
@@ -120,9 +175,31 @@ public class ToolPlugin implements Plugin<Project> {
     ToolExtension toolExtension = project.getExtensions().create(ToolExtension.class, "tool", ToolExtension.class);
     toolExtension.getBinDirectory().convention(DEFAULT_SCRIPT_PATH);
     toolExtension.getLibDirectory().convention(DEFAULT_LIBRARY_PATH);
+    toolExtension.getAssemblyMode().convention(AssemblyMode.COPY);
+    toolExtension.getHardLinkLibraries().convention(false);
+    toolExtension.getConsolidateClasspath().convention(false);
     toolExtension.getUnixTemplate().convention(project.getResources().getText().fromUri(DEFAULT_UNIX_TEMPLATE));
     toolExtension.getWindowsTemplate().convention(project.getResources().getText().fromUri(DEFAULT_WINDOWS_TEMPLATE));
 
+    /*
+     * Short-lived tools want to be up and running as fast as possible: stop at C1, avoid the concurrent collector
+     * setup costs and use class data sharing where available.
+     */
+    toolExtension.getStartupProfiles().register(CLI_PROFILE, profile -> profile.getJavaOptions().convention(javaOptions(
+            "-XX:TieredStopAtLevel=1",
+            "-XX:+UseSerialGC",
+            "-Xshare:auto"
+    )));
+    /*
+     * Long-lived services size themselves from the (container) memory limits rather than the host's.
+     */
+    toolExtension.getStartupProfiles().register(SERVICE_PROFILE, profile -> profile.getJavaOptions().convention(javaOptions(
+            "-XX:InitialRAMPercentage=25.0",
+            "-XX:MaxRAMPercentage=75.0",
+            "-XX:+UseG1GC",
+            "-XX:+ExitOnOutOfMemoryError"
+    )));
+
     project.getPlugins().withType(JavaPlugin.class).configureEach(javaPlugin -> {
       project.getExtensions().configure(SourceSetContainer.class, sourceSets -> {
         sourceSets.configureEach(sourceSet -> {
@@ -147,11 +224,14 @@ public class ToolPlugin implements Plugin<Project> {
 
     Provider<CreateToolScripts> scriptsTask = project.getTasks().register("generateToolScripts", CreateToolScripts.class, t -> {
       t.getToolName().convention(toolExtension.getName());
-      t.getOutputDir().convention(project.getLayout().getBuildDirectory().dir("scripts"));
+      t.getOutputDir().convention(project.getLayout().getBuildDirectory().dir("toolScripts"));
 
       t.getUnixTemplate().convention(toolExtension.getUnixTemplate());
       t.getWindowsTemplate().convention(toolExtension.getWindowsTemplate());
-      t.getJavaOptions().convention(toolExtension.getJavaOptions());
+      t.getJavaOptions().convention(toolExtension.getStartupProfile()
+              .flatMap(name -> toolExtension.getStartupProfiles().named(name).flatMap(StartupProfile::getJavaOptions))
+              .orElse(emptyList())
+              .zip(toolExtension.getJavaOptions(), (profile, tool) -> Stream.concat(profile.stream(), tool.stream()).collect(toList())));
       t.getJavaArguments().convention(toolExtension.getJavaArguments());
 
       Provider<String> jarName = toolExtension.getJar().flatMap(jar -> jar.getArchiveFile().map(f -> f.getAsFile().getName()));
@@ -159,14 +239,59 @@ public class ToolPlugin implements Plugin<Project> {
       t.getJarPath().convention(toolExtension.getBinDirectory().zip(fromRootJarPath, (bin, jar) -> stream(Paths.get(bin).relativize(jar).spliterator(), false).map(Path::toString).collect(toList())));
     });
 
+    project.getTasks().register("recordToolClassLoadOrder", ClassLoadTrace.Record.class, t -> {
+      t.setDescription("Runs the tool with its training arguments, recording the order classes are loaded in.");
+      t.getMainClass().convention(toolExtension.getMainClass());
+      t.classpath(toolExtension.getJar(), toolExtension.getClasspath());
+      t.getTrainingArguments().convention(toolExtension.getTrainingArguments());
+      t.getClassLoadLog().convention(project.getLayout().getBuildDirectory().file("tool-training/class-load.log"));
+    });
+
+    Provider<ConsolidateLibraries> consolidateToolLibraries = project.getTasks().register("consolidateToolLibraries", ConsolidateLibraries.class, t -> {
+      t.getLibraries().from(toolExtension.getJar(), toolExtension.getClasspath());
+      t.getClassLoadOrder().convention(toolExtension.getClassLoadOrder());
+      Provider<String> jarName = toolExtension.getJar().flatMap(jar -> jar.getArchiveFileName());
+      t.getConsolidatedJar().convention(project.getLayout().getBuildDirectory().dir("tool-consolidated").flatMap(d -> d.file(jarName)));
+    });
+
+    Property<Boolean> consolidate = toolExtension.getConsolidateClasspath();
+    Callable<Object> toolLibraries = () -> {
+      if (consolidate.get()) {
+        return consolidateToolLibraries;
+      } else {
+        return asList(toolExtension.getJar(), toolExtension.getClasspath());
+      }
+    };
+
+    Provider<Directory> toolDir = project.getLayout().getBuildDirectory().dir("tool");
+    Provider<MirrorLibraries> mirrorToolLibraries = project.getTasks().register("mirrorToolLibraries", MirrorLibraries.class, t -> {
+      t.getLibraries().from(toolLibraries);
+      t.getHardLinks().convention(toolExtension.getHardLinkLibraries());
+      t.getDestinationDir().convention(toolDir.flatMap(dir -> dir.dir(toolExtension.getLibDirectory())));
+    });
+
+    Property<AssemblyMode> assemblyMode = toolExtension.getAssemblyMode();
     Provider<Sync> assembleTool = project.getTasks().register("assembleTool", Sync.class, sync -> {
       sync.setGroup(LifecycleBasePlugin.BUILD_GROUP);
-      sync.into(project.getLayout().getBuildDirectory().dir("tool"));
+      sync.into(toolDir);
 
-      sync.into(toolExtension.getLibDirectory(), spec -> {
-        spec.from(toolExtension.getJar());
-        spec.from(toolExtension.getClasspath());
-      });
+      sync.into(toolExtension.getLibDirectory(), spec -> spec.from((Callable<Object>) () -> {
+        if (assemblyMode.get() == AssemblyMode.COPY) {
+          return toolLibraries;
+        } else {
+          return emptyList();
+        }
+      }));
+
+      /*
+       * In incremental mode the library directory is maintained by the mirroring task, so the sync must leave it be.
+       */
+      sync.dependsOn((Callable<Object>) () -> assemblyMode.get() == AssemblyMode.INCREMENTAL ? mirrorToolLibraries : emptyList());
+      sync.preserve(preserve -> preserve.include(element -> {
+        String path = element.getRelativePath().getPathString();
+        String lib = toolExtension.getLibDirectory().get();
+        return assemblyMode.get() == AssemblyMode.INCREMENTAL && (path.equals(lib) || path.startsWith(lib + "/"));
+      }));
 
       sync.into(toolExtension.getBinDirectory(), spec -> spec.from(scriptsTask));
 
@@ -183,6 +308,27 @@ public class ToolPlugin implements Plugin<Project> {
       c.attributes(a -> a.attribute(Category.CATEGORY_ATTRIBUTE, project.getObjects().named(Category.class, TOOL_CATEGORY)));
     });
     project.getArtifacts().add("tool", assembleTool.map(Sync::getDestinationDir));
+
+    Provider<FileCollection> toolArtifacts = project.getConfigurations().named("tool").map(c -> c.getOutgoing().getArtifacts().getFiles());
+    project.getTasks().withType(ToolDistribution.class).configureEach(t -> {
+      t.setGroup(DISTRIBUTION_GROUP);
+      t.getTool().from(toolArtifacts);
+      t.getRootName().convention(toolExtension.getName().orElse(project.getName()));
+      t.getCompressionLevel().convention(Deflater.DEFAULT_COMPRESSION);
+      t.getParallelism().convention(project.getGradle().getStartParameter().getMaxWorkerCount());
+    });
+    Provider<Directory> distributions = project.getLayout().getBuildDirectory().dir("distributions");
+    project.getTasks().register("toolDistZip", ToolDistZip.class, t ->
+            t.getArchiveFile().convention(distributions.flatMap(d -> d.file(t.getRootName().map(name -> name + ".zip")))));
+    project.getTasks().register("toolDistTar", ToolDistTar.class, t ->
+            t.getArchiveFile().convention(distributions.flatMap(d -> d.file(t.getRootName().map(name -> name + ".tar.gz")))));
+  }
+
+  /*
+   * Default profile options are rendered per platform: cmd treats '=' as an argument separator, so Windows gets them quoted.
+   */
+  private static List<Object> javaOptions(String... options) {
+    return Stream.of(options).map(ToolExtension::argument).collect(toList());
   }
 
   public abstract static class ToolExtension {
@@ -201,8 +347,51 @@ public class ToolPlugin implements Plugin<Project> {
 
     public abstract Property<AbstractArchiveTask> getJar();
 
+    /**
+     * How the tool libraries are placed in the assembled tool.
+     *
+     * @return the library assembly mode
+     */
+    public abstract Property<AssemblyMode> getAssemblyMode();
+
+    /**
+     * Hard-link the tool libraries to their sources when using {@link AssemblyMode#INCREMENTAL} assembly.
+     * <p>
+     * Linked files share storage with the Gradle caches and {@code build/libs}: anything modifying the assembled tool's
+     * libraries in place would corrupt those too. Defaults to {@code false}, mirroring plain copies.
+     *
+     * @return {@code true} to hard-link tool libraries
+     */
+    public abstract Property<Boolean> getHardLinkLibraries();
+
     public abstract Property<FileCollection> getClasspath();
 
+    /**
+     * Replace the tool jar and its classpath with a single consolidated jar.
+     * <p>
+     * The consolidated jar keeps the tool jar's name, but carries no {@code Class-Path} manifest attribute.
+     *
+     * @return {@code true} to consolidate the tool classpath
+     */
+    public abstract Property<Boolean> getConsolidateClasspath();
+
+    /**
+     * Class load log used to order the entries of the consolidated jar.
+     * <p>
+     * This is typically either a checked-in log, or the output of the {@code recordToolClassLoadOrder} task.
+     *
+     * @return class load log
+     * @see ClassLoadTrace
+     */
+    public abstract RegularFileProperty getClassLoadOrder();
+
+    /**
+     * Arguments to run the tool with when recording its class load order.
+     *
+     * @return training arguments
+     */
+    public abstract ListProperty<String> getTrainingArguments();
+
     public abstract DomainObjectSet<Action<CopySpec>> getExtras();
 
     public void extraContents(Action<CopySpec> action) {
@@ -212,6 +401,21 @@ public class ToolPlugin implements Plugin<Project> {
     public abstract ListProperty<Object> getJavaOptions();
     public abstract ListProperty<Object> getJavaArguments();
 
+    /**
+     * Named startup profile whose JVM options are prepended to {@link #getJavaOptions()}.
+     *
+     * @return selected startup profile name
+     * @see ToolPlugin#CLI_PROFILE
+     * @see ToolPlugin#SERVICE_PROFILE
+     */
+    public abstract Property<String> getStartupProfile();
+
+    public abstract NamedDomainObjectContainer<StartupProfile> getStartupProfiles();
+
+    public void startupProfiles(Action<NamedDomainObjectContainer<StartupProfile>> action) {
+      action.execute(getStartupProfiles());
+    }
+
     public static PlatformSensitiveString env(String variable) {
       return os -> os.isWindows() ?  "%" + variable + "%" : "${" + variable + "}";
     }
@@ -232,54 +436,358 @@ public class ToolPlugin implements Plugin<Project> {
     }
   }
 
+  public enum AssemblyMode {
+    /**
+     * Libraries are copied in to the tool on every change (the default).
+     */
+    COPY,
+    /**
+     * Libraries are mirrored in to the tool by the {@code mirrorToolLibraries} task, which only updates changed entries
+     * and removes stale ones, as {@code Sync} does.
+     *
+     * @see ToolExtension#getHardLinkLibraries()
+     */
+    INCREMENTAL
+  }
+
+  /**
+   * Incrementally mirrors the tool libraries in to the assembled tool, copying (or optionally hard-linking) only changed
+   * entries.
+   */
+  public abstract static class MirrorLibraries extends DefaultTask {
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract ConfigurableFileCollection getLibraries();
+
+    /**
+     * Hard-link libraries to their sources, falling back to a copy where linking is not possible.
+     *
+     * @return {@code true} to hard-link
+     */
+    @Input
+    public abstract Property<Boolean> getHardLinks();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getDestinationDir();
+
+    @TaskAction
+    void mirror() throws IOException {
+      Map<String, Path> libraries = new LinkedHashMap<>();
+      for (File library : getLibraries()) {
+        if (libraries.putIfAbsent(library.getName(), library.toPath()) != null) {
+          getLogger().warn("Ignoring duplicate tool library {} (already provided by {})", library, libraries.get(library.getName()));
+        }
+      }
+
+      FileMirror mirror = FileMirror.mirror(libraries, getDestinationDir().get().getAsFile().toPath(), getHardLinks().get());
+      getLogger().info("Tool libraries updated: {}", mirror);
+    }
+  }
+
+  /**
+   * Merges the tool jar and its classpath in to a single jar.
+   * <p>
+   * Where libraries overlap the first occurrence wins, except for service files which are merged. Signatures, module
+   * descriptors and the {@code Class-Path} attribute are dropped. Entries are written in recorded class load order (if
+   * available) so that startup reads the jar close to sequentially.
+   */
+  public abstract static class ConsolidateLibraries extends DefaultTask {
+
+    private static final Pattern DROPPED_ENTRIES = Pattern.compile(
+            "META-INF/[^/]+\\.(SF|RSA|DSA|EC)|META-INF/SIG-[^/]+|META-INF/INDEX\\.LIST|(META-INF/versions/\\d+/)?module-info\\.class");
+    private static final String SERVICES = "META-INF/services/";
+
+    @Classpath
+    public abstract ConfigurableFileCollection getLibraries();
+
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getClassLoadOrder();
+
+    @OutputFile
+    public abstract RegularFileProperty getConsolidatedJar();
+
+    @TaskAction
+    void consolidate() throws IOException {
+      List<ZipFile> libraries = new ArrayList<>();
+      try {
+        Manifest manifest = null;
+        boolean multiRelease = false;
+        Map<String, ZipFile> entries = new LinkedHashMap<>();
+        Map<String, Set<String>> services = new TreeMap<>();
+
+        for (File file : getLibraries()) {
+          if (!file.isFile()) {
+            getLogger().warn("Ignoring non-jar tool library {}", file);
+            continue;
+          }
+          ZipFile library = new ZipFile(file);
+          libraries.add(library);
+          for (ZipEntry entry : list(library.entries())) {
+            String name = entry.getName();
+            if (name.equals(JarFile.MANIFEST_NAME)) {
+              try (InputStream input = library.getInputStream(entry)) {
+                Manifest libraryManifest = new Manifest(input);
+                multiRelease |= Boolean.parseBoolean(libraryManifest.getMainAttributes().getValue("Multi-Release"));
+                if (manifest == null) {
+                  manifest = libraryManifest;
+                }
+              }
+            } else if (name.startsWith(SERVICES) && !entry.isDirectory()) {
+              Set<String> providers = services.computeIfAbsent(name, k -> new LinkedHashSet<>());
+              try (BufferedReader reader = new BufferedReader(new InputStreamReader(library.getInputStream(entry), StandardCharsets.UTF_8))) {
+                reader.lines().map(line -> line.replaceFirst("#.*", "").trim()).filter(line -> !line.isEmpty()).forEach(providers::add);
+              }
+            } else if (!DROPPED_ENTRIES.matcher(name).matches()) {
+              entries.putIfAbsent(name, library);
+            }
+          }
+        }
+
+        List<String> order = new ArrayList<>(entries.size());
+        if (getClassLoadOrder().isPresent()) {
+          for (String entry : ClassLoadTrace.parse(getClassLoadOrder().get().getAsFile().toPath()).getEntryNames()) {
+            if (entries.containsKey(entry)) {
+              order.add(entry);
+            }
+          }
+          getLogger().info("Ordered {} of {} consolidated entries by recorded class load order", order.size(), entries.size());
+        }
+        Set<String> ordered = new HashSet<>(order);
+        entries.keySet().stream().filter(name -> !ordered.contains(name)).forEach(order::add);
+
+        Manifest consolidatedManifest = new Manifest();
+        if (manifest != null) {
+          consolidatedManifest.getMainAttributes().putAll(manifest.getMainAttributes());
+        } else {
+          consolidatedManifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        }
+        consolidatedManifest.getMainAttributes().remove(Attributes.Name.CLASS_PATH);
+        if (multiRelease) {
+          consolidatedManifest.getMainAttributes().putValue("Multi-Release", "true");
+        }
+
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(getConsolidatedJar().get().getAsFile().toPath()))) {
+          output.putNextEntry(entry("META-INF/"));
+          output.putNextEntry(entry(JarFile.MANIFEST_NAME));
+          consolidatedManifest.write(output);
+          for (String name : order) {
+            if (name.equals("META-INF/")) {
+              continue;
+            }
+            ZipFile library = entries.get(name);
+            output.putNextEntry(entry(name));
+            try (InputStream input = library.getInputStream(library.getEntry(name))) {
+              copy(input, output);
+            }
+          }
+          for (Map.Entry<String, Set<String>> service : services.entrySet()) {
+            output.putNextEntry(entry(service.getKey()));
+            output.write(service.getValue().stream().map(provider -> provider + "\n").collect(joining()).getBytes(StandardCharsets.UTF_8));
+          }
+        }
+      } finally {
+        for (ZipFile library : libraries) {
+          library.close();
+        }
+      }
+    }
+
+    private static ZipEntry entry(String name) {
+      ZipEntry entry = new ZipEntry(name);
+      entry.setTimeLocal(ZipWriter.CONSTANT_TIME);
+      return entry;
+    }
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = input.read(buffer)) >= 0) {
+        output.write(buffer, 0, read);
+      }
+    }
+  }
+
+  /**
+   * Archives the assembled tool, compressing on multiple threads.
+   * <p>
+   * Output is reproducible: entries are sorted and carry fixed timestamps, and already compressed files (e.g. the
+   * tool's jars) are stored rather than deflated again.
+   */
+  public abstract static class ToolDistribution extends DefaultTask {
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getTool();
+
+    /**
+     * Name of the top-level directory in the archive.
+     *
+     * @return archive root directory name
+     */
+    @Input
+    public abstract Property<String> getRootName();
+
+    @Input
+    public abstract Property<Integer> getCompressionLevel();
+
+    @Internal
+    public abstract Property<Integer> getParallelism();
+
+    @OutputFile
+    public abstract RegularFileProperty getArchiveFile();
+
+    @TaskAction
+    void archive() throws IOException {
+      List<Path> roots = getTool().getFiles().stream().map(File::toPath).collect(toList());
+      DirectoryArchiver archiver = new DirectoryArchiver(getParallelism().get(), getCompressionLevel().get(), getTemporaryDir().toPath());
+      archive(archiver, getRootName().get(), roots, getArchiveFile().get().getAsFile().toPath());
+    }
+
+    protected abstract void archive(DirectoryArchiver archiver, String prefix, List<Path> roots, Path archive) throws IOException;
+  }
+
+  public abstract static class ToolDistZip extends ToolDistribution {
+
+    @Override
+    protected void archive(DirectoryArchiver archiver, String prefix, List<Path> roots, Path archive) throws IOException {
+      archiver.zip(prefix, roots, archive);
+    }
+  }
+
+  public abstract static class ToolDistTar extends ToolDistribution {
+
+    @Override
+    protected void archive(DirectoryArchiver archiver, String prefix, List<Path> roots, Path archive) throws IOException {
+      archiver.tarGz(prefix, roots, archive);
+    }
+  }
+
+  /**
+   * A reusable set of JVM options for a class of tool.
+   * <p>
+   * Options may be plain strings or {@link PlatformSensitiveString} instances (e.g. {@link ToolExtension#path(Object...)})
+   * and are rendered separately for the Unix and Windows launchers.
+   */
+  public interface StartupProfile extends Named {
+
+    ListProperty<Object> getJavaOptions();
+  }
+
+  @CacheableTask
   public abstract static class CreateToolScripts extends ConventionTask {
 
+    public CreateToolScripts() {
+      /*
+       * Tracking the templates by content loses their build dependencies (e.g. on a task generating a template) so
+       * they are wired explicitly.
+       */
+      dependsOn((Callable<Object>) () -> Stream.of(getUnixTemplate(), getWindowsTemplate())
+              .filter(Provider::isPresent).map(Provider::get).collect(toList()));
+    }
+
     @Input
     abstract public Property<String> getToolName();
 
     @Input
     abstract public ListProperty<String> getJarPath();
 
-    @Input
+    /**
+     * JVM options for the tool: strings, or {@link PlatformSensitiveString} instances.
+     * <p>
+     * These are tracked as task inputs in their rendered form, via {@link #getUnixJavaOptions()} and
+     * {@link #getWindowsJavaOptions()}.
+     *
+     * @return the JVM options
+     */
+    @Internal
     public abstract ListProperty<Object> getJavaOptions();
 
-    @Input
+    /**
+     * Program arguments for the tool: strings, or {@link PlatformSensitiveString} instances.
+     * <p>
+     * These are tracked as task inputs in their rendered form, via {@link #getUnixJavaArguments()} and
+     * {@link #getWindowsJavaArguments()}.
+     *
+     * @return the program arguments
+     */
+    @Internal
     public abstract ListProperty<Object> getJavaArguments();
 
-    @Internal
+    @Input
+    public Provider<List<String>> getUnixJavaOptions() {
+      return render(getJavaOptions(), OperatingSystem.UNIX);
+    }
+
+    @Input
+    public Provider<List<String>> getWindowsJavaOptions() {
+      return render(getJavaOptions(), OperatingSystem.WINDOWS);
+    }
+
+    @Input
+    public Provider<List<String>> getUnixJavaArguments() {
+      return render(getJavaArguments(), OperatingSystem.UNIX);
+    }
+
+    @Input
+    public Provider<List<String>> getWindowsJavaArguments() {
+      return render(getJavaArguments(), OperatingSystem.WINDOWS);
+    }
+
+    private static Provider<List<String>> render(ListProperty<Object> values, OperatingSystem os) {
+      return values.map(list -> list.stream().map(o -> stringForPlatform(o, os)).collect(toList()));
+    }
+
+    @OutputDirectory
     abstract public DirectoryProperty getOutputDir();
 
-    @Nested
+    /*
+     * Templates are tracked by content: their origin (often a URI in to this plugin's jar) would make the task's cache
+     * key depend on the location of the Gradle caches.
+     */
+    @Internal
     abstract public Property<TextResource> getUnixTemplate();
 
-    @Nested
+    @Internal
     abstract public Property<TextResource> getWindowsTemplate();
 
-    @OutputFile
+    @Input
+    public Provider<String> getUnixTemplateText() {
+      return getUnixTemplate().map(TextResource::asString);
+    }
+
+    @Input
+    public Provider<String> getWindowsTemplateText() {
+      return getWindowsTemplate().map(TextResource::asString);
+    }
+
+    @Internal
     public Provider<RegularFile> getUnixScript() {
       return getOutputDir().file(getToolName().map(name -> name + ".sh"));
     }
 
-    @OutputFile
+    @Internal
     public Provider<RegularFile> getWindowsScript() {
       return getOutputDir().file(getToolName().map( name -> name + ".bat"));
     }
 
     @Internal
     Template getUnixTemplateInstance() {
-      return createTemplate(getUnixTemplate().get());
+      return createTemplate(getUnixTemplateText().get());
     }
 
     @Internal
     Template getWindowsTemplateInstance() {
-      return createTemplate(getWindowsTemplate().get());
+      return createTemplate(getWindowsTemplateText().get());
     }
 
     private final SimpleTemplateEngine engine = new SimpleTemplateEngine();
 
-    private Template createTemplate(TextResource template) {
+    private Template createTemplate(String template) {
       try {
-        return engine.createTemplate(template.asReader());
+        return engine.createTemplate(template);
       } catch (IOException e) {
         throw new UncheckedIOException(e);
       }
@@ -321,8 +829,8 @@ public class ToolPlugin implements Plugin<Project> {
       return mapOf(String.class, String.class,
               "jar", ToolExtension.path(libFromTop.toArray()).toString(os),
               "tooldir_evaluation", backTraversals("TOOL_DIR", backTraversals, os),
-              "java_opts", getJavaOptions().get().stream().map(o -> stringForPlatform(o, os)).collect(joining(" ")),
-              "java_args", getJavaArguments().get().stream().map(o -> stringForPlatform(o, os)).collect(joining(" "))
+              "java_opts", String.join(" ", render(getJavaOptions(), os).get()),
+              "java_args", String.join(" ", render(getJavaArguments(), os).get())
       );
     }
 
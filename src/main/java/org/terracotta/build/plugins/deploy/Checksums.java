@@ -0,0 +1,172 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins.deploy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The Maven repository checksums (MD5, SHA-1, SHA-256 and SHA-512) of a file.
+ * <p>
+ * All digests are computed together, so each file is read exactly once however many checksums are required.
+ */
+public final class Checksums {
+
+  public enum Algorithm {
+    MD5("MD5", "md5"),
+    SHA1("SHA-1", "sha1"),
+    SHA256("SHA-256", "sha256"),
+    SHA512("SHA-512", "sha512");
+
+    private final String digest;
+    private final String extension;
+
+    Algorithm(String digest, String extension) {
+      this.digest = digest;
+      this.extension = extension;
+    }
+
+    /**
+     * Returns the file extension of this algorithm's sidecar files (e.g. {@code sha256}).
+     *
+     * @return sidecar extension
+     */
+    public String getExtension() {
+      return extension;
+    }
+
+    MessageDigest newDigest() {
+      try {
+        return MessageDigest.getInstance(digest);
+      } catch (NoSuchAlgorithmException e) {
+        throw new AssertionError(digest + " is a required digest algorithm", e);
+      }
+    }
+  }
+
+  private final Map<Algorithm, String> checksums;
+
+  private Checksums(Map<Algorithm, String> checksums) {
+    this.checksums = checksums;
+  }
+
+  /**
+   * Computes the checksums of a file.
+   *
+   * @param file file to digest
+   * @return the file's checksums
+   * @throws IOException on failure to read
+   */
+  public static Checksums of(Path file) throws IOException {
+    return copy(file, null);
+  }
+
+  /**
+   * Copies a file, computing its checksums in the same pass.
+   *
+   * @param source file to copy
+   * @param target destination of the copy, or {@code null} to only compute the checksums
+   * @return the file's checksums
+   * @throws IOException on failure to read or write
+   */
+  public static Checksums copy(Path source, Path target) throws IOException {
+    Map<Algorithm, MessageDigest> digests = new EnumMap<>(Algorithm.class);
+    for (Algorithm algorithm : Algorithm.values()) {
+      digests.put(algorithm, algorithm.newDigest());
+    }
+
+    try (InputStream in = Files.newInputStream(source);
+         OutputStream out = target == null ? OutputStream.nullOutputStream() : Files.newOutputStream(target)) {
+      byte[] buffer = new byte[256 * 1024];
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        for (MessageDigest digest : digests.values()) {
+          digest.update(buffer, 0, read);
+        }
+        out.write(buffer, 0, read);
+      }
+    }
+
+    Map<Algorithm, String> checksums = new EnumMap<>(Algorithm.class);
+    digests.forEach((algorithm, digest) -> checksums.put(algorithm, hex(digest.digest())));
+    return new Checksums(checksums);
+  }
+
+  /**
+   * Computes the checksums of some in-memory content.
+   *
+   * @param content bytes to digest
+   * @return the content's checksums
+   */
+  public static Checksums of(byte[] content) {
+    Map<Algorithm, String> checksums = new EnumMap<>(Algorithm.class);
+    for (Algorithm algorithm : Algorithm.values()) {
+      checksums.put(algorithm, hex(algorithm.newDigest().digest(content)));
+    }
+    return new Checksums(checksums);
+  }
+
+  /**
+   * Returns the lower-case hex checksum for an algorithm.
+   *
+   * @param algorithm checksum algorithm
+   * @return the hex checksum
+   */
+  public String get(Algorithm algorithm) {
+    return checksums.get(algorithm);
+  }
+
+  /**
+   * Writes a sidecar file (e.g. {@code foo.jar.sha256}) next to {@code file} for each algorithm.
+   *
+   * @param file the file these checksums belong to
+   * @throws IOException on failure to write
+   */
+  public void writeSidecars(Path file) throws IOException {
+    for (Map.Entry<Algorithm, String> checksum : checksums.entrySet()) {
+      Files.write(sidecar(file, checksum.getKey()), checksum.getValue().getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+  /**
+   * Returns the sidecar path holding {@code file}'s checksum for an algorithm.
+   *
+   * @param file checksummed file
+   * @param algorithm checksum algorithm
+   * @return the sidecar path
+   */
+  public static Path sidecar(Path file, Algorithm algorithm) {
+    return file.resolveSibling(file.getFileName() + "." + algorithm.getExtension());
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+}
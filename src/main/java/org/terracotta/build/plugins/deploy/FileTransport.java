@@ -0,0 +1,52 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins.deploy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+class FileTransport implements RepositoryTransport {
+
+  private final Path root;
+
+  FileTransport(Path root) {
+    this.root = root;
+  }
+
+  @Override
+  public byte[] get(String path) throws IOException {
+    Path file = root.resolve(path);
+    return Files.isRegularFile(file) ? Files.readAllBytes(file) : null;
+  }
+
+  @Override
+  public void put(String path, Path file) throws IOException {
+    Path target = root.resolve(path);
+    Files.createDirectories(target.getParent());
+    Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @Override
+  public void put(String path, byte[] content) throws IOException {
+    Path target = root.resolve(path);
+    Files.createDirectories(target.getParent());
+    Files.write(target, content);
+  }
+}
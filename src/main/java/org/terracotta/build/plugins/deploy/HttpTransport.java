@@ -0,0 +1,91 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins.deploy;
+
+import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
+import org.apache.hc.client5.http.fluent.Executor;
+import org.apache.hc.client5.http.fluent.Request;
+import org.apache.hc.client5.http.impl.auth.BasicScheme;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+
+class HttpTransport implements RepositoryTransport {
+
+  private final URI root;
+  private final String authorization;
+  private final Executor executor = Executor.newInstance();
+
+  HttpTransport(URI root, String username, String password) {
+    this.root = root.toString().endsWith("/") ? root : URI.create(root + "/");
+    if (username == null) {
+      this.authorization = null;
+    } else {
+      BasicScheme basicAuth = new BasicScheme();
+      basicAuth.initPreemptive(new UsernamePasswordCredentials(username, password == null ? new char[0] : password.toCharArray()));
+      try {
+        this.authorization = basicAuth.generateAuthResponse(null, null, null);
+      } catch (Exception e) {
+        throw new IllegalStateException("Failed to generate basic authentication header", e);
+      }
+    }
+  }
+
+  @Override
+  public byte[] get(String path) throws IOException {
+    return executor.execute(authorize(Request.get(root.resolve(path)))).handleResponse(response -> {
+      if (response.getCode() == HttpStatus.SC_OK) {
+        return EntityUtils.toByteArray(response.getEntity());
+      } else if (response.getCode() == HttpStatus.SC_NOT_FOUND) {
+        return null;
+      } else {
+        throw new HttpResponseException(response.getCode(), "GET " + root.resolve(path) + ": " + response.getReasonPhrase());
+      }
+    });
+  }
+
+  @Override
+  public void put(String path, Path file) throws IOException {
+    upload(path, Request.put(root.resolve(path)).bodyFile(file.toFile(), ContentType.APPLICATION_OCTET_STREAM));
+  }
+
+  @Override
+  public void put(String path, byte[] content) throws IOException {
+    upload(path, Request.put(root.resolve(path)).bodyByteArray(content, ContentType.APPLICATION_OCTET_STREAM));
+  }
+
+  private void upload(String path, Request request) throws IOException {
+    executor.execute(authorize(request)).handleResponse(response -> {
+      if (response.getCode() / 100 == 2) {
+        return null;
+      } else {
+        throw new HttpResponseException(response.getCode(), "PUT " + root.resolve(path) + ": " + response.getReasonPhrase());
+      }
+    });
+  }
+
+  private Request authorize(Request request) {
+    return authorization == null ? request : request.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins.deploy;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * {@code maven-metadata.xml} maintenance: artifact level metadata for all publications, and version level metadata for
+ * snapshot publications.
+ */
+public final class MavenMetadata {
+
+  public static final String FILE_NAME = "maven-metadata.xml";
+
+  private static final String SNAPSHOT = "SNAPSHOT";
+  private static final DateTimeFormatter LAST_UPDATED = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+  private MavenMetadata() {
+  }
+
+  /**
+   * Returns whether a version is a snapshot version.
+   *
+   * @param version publication version
+   * @return {@code true} for a {@code -SNAPSHOT} version
+   */
+  public static boolean isSnapshot(String version) {
+    return version.endsWith("-" + SNAPSHOT);
+  }
+
+  /**
+   * Returns the artifact level metadata resulting from publishing a new version.
+   * <p>
+   * A snapshot version becomes the {@code latest} version, but leaves the {@code release} version as it was.
+   *
+   * @param existing the current metadata, or {@code null} if there is none
+   * @param groupId publication group id
+   * @param artifactId publication artifact id
+   * @param version the version being published
+   * @return the updated metadata
+   * @throws IOException if the existing metadata cannot be parsed
+   */
+  public static byte[] update(byte[] existing, String groupId, String artifactId, String version) throws IOException {
+    Set<String> versions = new LinkedHashSet<>();
+    String release = null;
+    if (existing != null) {
+      Document document = parse(existing);
+      release = text(document, "release");
+      NodeList nodes = document.getElementsByTagName("version");
+      for (int i = 0; i < nodes.getLength(); i++) {
+        Node node = nodes.item(i);
+        if (node.getParentNode() != null && "versions".equals(node.getParentNode().getNodeName())) {
+          versions.add(node.getTextContent().trim());
+        }
+      }
+    }
+    versions.remove(version);
+    versions.add(version);
+    if (!isSnapshot(version)) {
+      release = version;
+    }
+
+    Document document = newDocument(groupId, artifactId);
+    Element versioning = append(document.getDocumentElement(), "versioning", null);
+    append(versioning, "latest", version);
+    if (release != null) {
+      append(versioning, "release", release);
+    }
+    Element versionsElement = append(versioning, "versions", null);
+    versions.forEach(v -> append(versionsElement, "version", v));
+    append(versioning, "lastUpdated", ZonedDateTime.now(ZoneOffset.UTC).format(LAST_UPDATED));
+    return write(document, groupId + ":" + artifactId);
+  }
+
+  /**
+   * Returns the snapshot recorded in existing version level metadata.
+   *
+   * @param existing the current version level metadata, or {@code null} if there is none
+   * @return the current snapshot, or {@code null} if there is none
+   * @throws IOException if the existing metadata cannot be parsed
+   */
+  public static Snapshot currentSnapshot(byte[] existing) throws IOException {
+    if (existing == null) {
+      return null;
+    } else {
+      Document document = parse(existing);
+      String timestamp = text(document, "timestamp");
+      String buildNumber = text(document, "buildNumber");
+      if (timestamp == null || buildNumber == null) {
+        return null;
+      } else {
+        return new Snapshot(timestamp, Integer.parseInt(buildNumber));
+      }
+    }
+  }
+
+  /**
+   * Returns the version level metadata of a published snapshot.
+   * <p>
+   * The classifier and extension of each artifact are taken from its file name: everything after the version up to the
+   * first {@code .} is the classifier, and the rest is the extension.
+   *
+   * @param groupId publication group id
+   * @param artifactId publication artifact id
+   * @param version the {@code -SNAPSHOT} version being published
+   * @param snapshot the snapshot being published
+   * @param fileNames the artifact file names, as named after the {@code -SNAPSHOT} version
+   * @return the version level metadata
+   * @throws IOException on failure to write the metadata
+   */
+  public static byte[] snapshot(String groupId, String artifactId, String version, Snapshot snapshot, Collection<String> fileNames) throws IOException {
+    String prefix = artifactId + "-" + version;
+    String updated = snapshot.getTimestamp().replace(".", "");
+
+    Document document = newDocument(groupId, artifactId);
+    append(document.getDocumentElement(), "version", version);
+    Element versioning = append(document.getDocumentElement(), "versioning", null);
+    Element snapshotElement = append(versioning, "snapshot", null);
+    append(snapshotElement, "timestamp", snapshot.getTimestamp());
+    append(snapshotElement, "buildNumber", Integer.toString(snapshot.getBuildNumber()));
+    append(versioning, "lastUpdated", updated);
+    Element snapshotVersions = append(versioning, "snapshotVersions", null);
+    fileNames.stream().sorted().forEach(fileName -> {
+      if (!fileName.startsWith(prefix)) {
+        throw new IllegalArgumentException("Artifact " + fileName + " is not named after " + prefix);
+      }
+      String suffix = fileName.substring(prefix.length());
+      Element snapshotVersion = append(snapshotVersions, "snapshotVersion", null);
+      if (suffix.startsWith("-")) {
+        append(snapshotVersion, "classifier", suffix.substring(1, suffix.indexOf('.')));
+      }
+      append(snapshotVersion, "extension", suffix.substring(suffix.indexOf('.') + 1));
+      append(snapshotVersion, "value", snapshot.version(version));
+      append(snapshotVersion, "updated", updated);
+    });
+    return write(document, groupId + ":" + artifactId + ":" + version);
+  }
+
+  /**
+   * A published snapshot: the timestamp and build number that replace {@code SNAPSHOT} in its artifacts' versions.
+   */
+  public static final class Snapshot {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd.HHmmss");
+
+    private final String timestamp;
+    private final int buildNumber;
+
+    private Snapshot(String timestamp, int buildNumber) {
+      this.timestamp = timestamp;
+      this.buildNumber = buildNumber;
+    }
+
+    /**
+     * Returns a snapshot timestamped now, numbered after the current one.
+     *
+     * @param current the current snapshot, or {@code null} if there is none
+     * @return the next snapshot
+     */
+    public static Snapshot next(Snapshot current) {
+      return new Snapshot(ZonedDateTime.now(ZoneOffset.UTC).format(TIMESTAMP), current == null ? 1 : current.buildNumber + 1);
+    }
+
+    public String getTimestamp() {
+      return timestamp;
+    }
+
+    public int getBuildNumber() {
+      return buildNumber;
+    }
+
+    /**
+     * Returns the unique version of this snapshot, e.g. {@code 1.0-20240101.120000-1} for {@code 1.0-SNAPSHOT}.
+     *
+     * @param version the {@code -SNAPSHOT} version
+     * @return the unique snapshot version
+     */
+    public String version(String version) {
+      return version.substring(0, version.length() - SNAPSHOT.length()) + timestamp + "-" + buildNumber;
+    }
+  }
+
+  private static Document newDocument(String groupId, String artifactId) throws IOException {
+    try {
+      Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+      Element metadata = document.createElement("metadata");
+      document.appendChild(metadata);
+      append(metadata, "groupId", groupId);
+      append(metadata, "artifactId", artifactId);
+      return document;
+    } catch (ParserConfigurationException e) {
+      throw new IOException("Failed to create " + FILE_NAME + " for " + groupId + ":" + artifactId, e);
+    }
+  }
+
+  private static byte[] write(Document document, String coordinates) throws IOException {
+    try {
+      Transformer transformer = TransformerFactory.newInstance().newTransformer();
+      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+      transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+      transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      transformer.transform(new DOMSource(document), new StreamResult(output));
+      return output.toByteArray();
+    } catch (TransformerException e) {
+      throw new IOException("Failed to write " + FILE_NAME + " for " + coordinates, e);
+    }
+  }
+
+  private static String text(Document document, String name) {
+    NodeList nodes = document.getElementsByTagName(name);
+    return nodes.getLength() == 0 ? null : nodes.item(0).getTextContent().trim();
+  }
+
+  private static Document parse(byte[] metadata) throws IOException {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      DocumentBuilder builder = factory.newDocumentBuilder();
+      return builder.parse(new ByteArrayInputStream(metadata));
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("Failed to parse existing " + FILE_NAME, e);
+    }
+  }
+
+  private static Element append(Element parent, String name, String text) {
+    Element element = parent.getOwnerDocument().createElement(name);
+    if (text != null) {
+      element.setTextContent(text);
+    }
+    parent.appendChild(element);
+    return element;
+  }
+}
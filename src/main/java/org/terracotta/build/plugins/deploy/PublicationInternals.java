@@ -0,0 +1,133 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.terracotta.build.plugins.deploy;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
+import org.gradle.api.credentials.PasswordCredentials;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.publish.maven.MavenArtifact;
+import org.gradle.api.publish.maven.MavenPublication;
+import org.gradle.api.publish.maven.internal.publication.MavenPublicationInternal;
+import org.gradle.api.publish.maven.internal.publisher.MavenNormalizedPublication;
+import org.gradle.internal.artifacts.repositories.AuthenticationSupportedInternal;
+import org.gradle.util.GradleVersion;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The deploy plugin's only access to Gradle's internal publishing API.
+ * <p>
+ * Staged publishing needs the files of a Maven publication and the credentials configured on a repository, neither of
+ * which Gradle exposes publicly. Every method here checks the running Gradle version first, and reports any linkage
+ * failure against the internal types as an unsupported Gradle version, rather than as an obscure runtime error.
+ */
+public final class PublicationInternals {
+
+  /**
+   * The oldest Gradle version the internal API use here is known to work with.
+   */
+  public static final GradleVersion MINIMUM_GRADLE_VERSION = GradleVersion.version("8.12");
+
+  private PublicationInternals() {
+  }
+
+  /**
+   * Returns the coordinates a publication is published under.
+   *
+   * @param providers provider factory
+   * @param publication Maven publication
+   * @return the publication coordinates
+   */
+  public static Provider<ModuleVersionIdentifier> coordinates(ProviderFactory providers, MavenPublication publication) {
+    return providers.provider(() -> internal(() -> ((MavenPublicationInternal) publication).getCoordinates(ModuleVersionIdentifier.class)));
+  }
+
+  /**
+   * Returns the files of all publishable artifacts of a publication, carrying the dependencies on the tasks that build
+   * them.
+   *
+   * @param publication Maven publication
+   * @return the publishable files
+   */
+  public static FileCollection publishableFiles(MavenPublication publication) {
+    return internal(() -> ((MavenPublicationInternal) publication).getPublishableArtifacts().getFiles());
+  }
+
+  /**
+   * Returns the artifacts of a publication, including its POM, keyed by their file name in a Maven repository.
+   * <p>
+   * Snapshot artifacts are named after the {@code -SNAPSHOT} version: the timestamped names are only assigned when
+   * they are published.
+   *
+   * @param providers provider factory
+   * @param publication Maven publication
+   * @return the artifact files by repository file name
+   * @throws GradleException if two artifacts share a file name
+   */
+  public static Provider<Map<String, File>> artifacts(ProviderFactory providers, MavenPublication publication) {
+    return providers.provider(() -> internal(() -> {
+      MavenNormalizedPublication normalized = ((MavenPublicationInternal) publication).asNormalisedPublication();
+      Map<String, File> artifacts = new LinkedHashMap<>();
+      Stream.concat(Stream.of(normalized.getPomArtifact()), normalized.getAllArtifacts().stream()).distinct().forEach(artifact -> {
+        String name = fileName(normalized.getArtifactId(), normalized.getVersion(), artifact);
+        File previous = artifacts.put(name, artifact.getFile());
+        if (previous != null) {
+          throw new GradleException("Publication '" + normalized.getName() + "' has multiple artifacts named " + name + ": " + previous + " and " + artifact.getFile());
+        }
+      });
+      return artifacts;
+    }));
+  }
+
+  /**
+   * Returns the password credentials configured on a repository, without creating any if there are none.
+   *
+   * @param repository Maven repository
+   * @return the configured credentials
+   */
+  public static Provider<PasswordCredentials> credentials(MavenArtifactRepository repository) {
+    return internal(() -> ((AuthenticationSupportedInternal) repository).getConfiguredCredentials()
+        .filter(PasswordCredentials.class::isInstance).map(PasswordCredentials.class::cast));
+  }
+
+  private static String fileName(String artifactId, String version, MavenArtifact artifact) {
+    String classifier = artifact.getClassifier() == null || artifact.getClassifier().isEmpty() ? "" : "-" + artifact.getClassifier();
+    return artifactId + "-" + version + classifier + "." + artifact.getExtension();
+  }
+
+  private static <T> T internal(Supplier<T> access) {
+    GradleVersion current = GradleVersion.current();
+    if (current.getBaseVersion().compareTo(MINIMUM_GRADLE_VERSION) < 0) {
+      throw new GradleException("Staged publishing requires " + MINIMUM_GRADLE_VERSION + " or later (running " + current + "): use the 'publish' task instead");
+    }
+    try {
+      return access.get();
+    } catch (LinkageError | ClassCastException e) {
+      throw new GradleException("Staged publishing is not compatible with " + current + ": use the 'publish' task instead", e);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins.deploy;
+
+import org.gradle.api.GradleException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Reads and writes files of a Maven repository, by path relative to the repository root.
+ */
+public interface RepositoryTransport {
+
+  /**
+   * Creates a transport for a {@code file:}, {@code http:} or {@code https:} repository.
+   *
+   * @param url repository root
+   * @param username basic authentication user, or {@code null}
+   * @param password basic authentication password, or {@code null}
+   * @return a repository transport
+   */
+  static RepositoryTransport of(URI url, String username, String password) {
+    switch (url.getScheme()) {
+      case "file":
+        return new FileTransport(Paths.get(url));
+      case "http":
+      case "https":
+        return new HttpTransport(url, username, password);
+      default:
+        throw new GradleException("Unsupported repository scheme: " + url);
+    }
+  }
+
+  /**
+   * Reads a repository file.
+   *
+   * @param path repository relative path
+   * @return the file content, or {@code null} if the file does not exist
+   * @throws IOException on failure to read
+   */
+  byte[] get(String path) throws IOException;
+
+  /**
+   * Writes a local file to the repository.
+   *
+   * @param path repository relative path
+   * @param file content to write
+   * @throws IOException on failure to write
+   */
+  void put(String path, Path file) throws IOException;
+
+  /**
+   * Writes some content to the repository.
+   *
+   * @param path repository relative path
+   * @param content content to write
+   * @throws IOException on failure to write
+   */
+  void put(String path, byte[] content) throws IOException;
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins.packaging;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.terracotta.build.archive.EntryPatterns;
+import org.terracotta.build.archive.ZipReader;
+import org.terracotta.build.archive.ZipWriter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Removes classes from a jar that are not reachable from a set of root classes.
+ * <p>
+ * A class is reachable if it is a root, matches a keep pattern, is named in a {@code META-INF/services} file (either
+ * as the service or as a provider), or is referenced by a reachable class. References are found in class file
+ * signatures, descriptors and bodies; string constants that name a class in the jar are conservatively treated as
+ * references to support simple reflective loading. Resources, and all versions of a reachable multi-release class,
+ * are always retained.
+ */
+public class JarMinimizer {
+
+  private static final String SERVICES = "META-INF/services/";
+  private static final Pattern VERSIONED = Pattern.compile("META-INF/versions/\\d+/(.+)");
+
+  private final Set<String> roots;
+  private final List<Pattern> keep;
+
+  /**
+   * Creates a minimizer.
+   *
+   * @param roots root class names, in dotted form
+   * @param keep patterns of classes to always keep, either class names or package wildcards ({@code a.b.*} for a
+   *             package, {@code a.b.**} for a package and its subpackages)
+   */
+  public JarMinimizer(Collection<String> roots, Collection<String> keep) {
+    this.roots = roots.stream().map(r -> r.replace('.', '/')).collect(Collectors.toSet());
+    this.keep = keep.stream().map(k -> EntryPatterns.compile(k.replace('.', '/'))).collect(Collectors.toList());
+  }
+
+  /**
+   * Write a minimized copy of a jar.
+   *
+   * @param input jar to minimize
+   * @param output minimized jar
+   * @return the result of the minimization
+   * @throws IOException on failure to read or write
+   */
+  public Result minimize(Path input, Path output) throws IOException {
+    try (ZipReader reader = ZipReader.open(input)) {
+      Map<String, List<ZipReader.Entry>> classes = new HashMap<>();
+      List<ZipReader.Entry> services = new ArrayList<>();
+      for (ZipReader.Entry entry : reader.getEntries()) {
+        String className = className(entry.getName());
+        if (className != null) {
+          classes.computeIfAbsent(className, k -> new ArrayList<>()).add(entry);
+        } else if (entry.getName().startsWith(SERVICES) && !entry.isDirectory()) {
+          services.add(entry);
+        }
+      }
+
+      Set<String> reachable = new HashSet<>();
+      Deque<String> pending = new ArrayDeque<>();
+      for (String name : classes.keySet()) {
+        if (roots.contains(name) || keep.stream().anyMatch(p -> p.matcher(name).matches())) {
+          pending.add(name);
+        }
+      }
+      for (ZipReader.Entry service : services) {
+        pending.add(service.getName().substring(SERVICES.length()).replace('.', '/'));
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(reader.getInputStream(service), StandardCharsets.UTF_8))) {
+          lines.lines().map(l -> l.replaceFirst("#.*", "").trim()).filter(l -> !l.isEmpty()).forEach(l -> pending.add(l.replace('.', '/')));
+        }
+      }
+
+      while (!pending.isEmpty()) {
+        String name = pending.pop();
+        List<ZipReader.Entry> entries = classes.get(name);
+        if (entries != null && reachable.add(name)) {
+          for (ZipReader.Entry entry : entries) {
+            try (InputStream in = reader.getInputStream(entry)) {
+              for (String reference : references(readAll(in))) {
+                if (classes.containsKey(reference) && !reachable.contains(reference)) {
+                  pending.add(reference);
+                }
+              }
+            }
+          }
+        }
+      }
+
+      Map<String, Long> removed = new TreeMap<>();
+      try (ZipWriter writer = new ZipWriter(Files.newOutputStream(output))) {
+        for (ZipReader.Entry entry : reader.getEntries()) {
+          String className = className(entry.getName());
+          if (className != null && !reachable.contains(className)) {
+            removed.merge(className.replace('/', '.'), entry.getSize(), Long::sum);
+          } else {
+            writer.copy(reader, entry);
+          }
+        }
+      }
+      return new Result(classes.size(), removed);
+    }
+  }
+
+  private static String className(String entryName) {
+    if (!entryName.endsWith(".class") || entryName.endsWith("module-info.class")) {
+      return null;
+    } else {
+      Matcher versioned = VERSIONED.matcher(entryName);
+      String name = versioned.matches() ? versioned.group(1) : entryName;
+      return name.substring(0, name.length() - ".class".length());
+    }
+  }
+
+  private static Set<String> references(byte[] classFile) {
+    Set<String> references = new HashSet<>();
+    Remapper collector = new Remapper() {
+      @Override
+      public String map(String internalName) {
+        references.add(internalName);
+        return internalName;
+      }
+
+      @Override
+      public Object mapValue(Object value) {
+        if (value instanceof String) {
+          references.add(((String) value).replace('.', '/'));
+          return value;
+        } else {
+          return super.mapValue(value);
+        }
+      }
+    };
+    /*
+     * The remapper only visits members the delegate visits, so a writer is needed to see method bodies.
+     */
+    new ClassReader(classFile).accept(new ClassRemapper(new ClassWriter(0), collector), 0);
+    return references;
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[64 * 1024];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      bytes.write(buffer, 0, read);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static class Result {
+
+    private final int classes;
+    private final Map<String, Long> removed;
+
+    Result(int classes, Map<String, Long> removed) {
+      this.classes = classes;
+      this.removed = removed;
+    }
+
+    /**
+     * Returns the removed classes, with their uncompressed size in bytes.
+     *
+     * @return removed classes
+     */
+    public Map<String, Long> getRemovedClasses() {
+      return removed;
+    }
+
+    /**
+     * Write a report of the removed classes.
+     *
+     * @param report report file
+     * @throws IOException on failure to write
+     */
+    public void writeReport(Path report) throws IOException {
+      List<String> lines = new ArrayList<>();
+      lines.add(String.format("Removed %d of %d classes (%d bytes uncompressed)", removed.size(), classes,
+          removed.values().stream().mapToLong(Long::longValue).sum()));
+      removed.forEach((name, size) -> lines.add(name + "\t" + size));
+      Files.createDirectories(report.getParent());
+      Files.write(report, lines, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -21,6 +21,9 @@ import org.gradle.api.Action;
 import org.gradle.api.Named;
 import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.SetProperty;
 
@@ -34,8 +37,119 @@ public interface Package {
 
   void withJavadocJar(Action<Javadoc> action);
 
+  /**
+   * Adds a Java release specific version of the package contents, making the package jar a multi-release jar.
+   * <p>
+   * Versioned contents are declared on the {@code java<release>Contents} configuration (e.g. a project compiled
+   * against a higher {@code JavaLanguageVersion}, or the output of a versioned source set) and are resolved
+   * non-transitively. Their classes and resources are relocated consistently with the base contents and merged into
+   * {@code META-INF/versions/<release>/} of the package jar.
+   *
+   * @param release Java release the contents target
+   */
+  void withRelease(int release);
+
   NamedDomainObjectContainer<? extends OptionalFeature> getOptionalFeatures();
 
+  /**
+   * Package relocations, mapping package patterns to their relocated destinations.
+   *
+   * @return package relocations
+   */
+  MapProperty<String, String> getRelocations();
+
+  default void relocate(String pattern, String destination) {
+    getRelocations().put(pattern, destination);
+  }
+
+  /**
+   * Apply the package relocations to each contents jar in a cacheable artifact transform, rather than in the shadow
+   * jar task.
+   * <p>
+   * Pre-relocated jars are cached per dependency version and relocation set, so relocation cost is only paid when
+   * either changes. Relocators configured directly on the shadow jar task are still applied by the task itself.
+   *
+   * @return {@code true} to pre-relocate package contents
+   */
+  Property<Boolean> getPreRelocate();
+
+  /**
+   * Package incrementally, reusing the compressed entries of unchanged contents jars from the previous package jar.
+   * <p>
+   * This is most effective in combination with {@link #getPreRelocate() pre-relocation}, since relocating in the jar
+   * task forces a full rebuild.
+   *
+   * @return {@code true} to package incrementally
+   * @see PackageJar
+   */
+  Property<Boolean> getIncrementalPackaging();
+
+  /**
+   * Remove packaged classes that are not reachable from the package's project contents, its service files or the
+   * {@link #getMinimizationKeep() kept} classes.
+   * <p>
+   * A report of the removed classes is written to {@code build/reports/minimize}.
+   *
+   * @return {@code true} to minimize the package jar
+   * @see JarMinimizer
+   */
+  Property<Boolean> getMinimize();
+
+  /**
+   * Classes retained by minimization regardless of reachability, as class names or package wildcards
+   * ({@code a.b.*} or {@code a.b.**}).
+   *
+   * @return kept class patterns
+   */
+  SetProperty<String> getMinimizationKeep();
+
+  default void keep(String... patterns) {
+    getMinimizationKeep().addAll(patterns);
+  }
+
+  /**
+   * Class load trace used to lay out the package jar, placing the manifest and service files first followed by classes
+   * in the order they were first loaded.
+   * <p>
+   * The trace can be recorded by the package's {@code recordClassLoadOrder} task, which runs the
+   * {@link #getTrainingMainClass() training main class} against the package contents, or by any JVM run with
+   * {@code -Xlog:class+load:file=<path>} (e.g. a test task).
+   *
+   * @return class load trace
+   * @see org.terracotta.build.ClassLoadTrace
+   */
+  RegularFileProperty getClassLoadOrder();
+
+  /**
+   * Main class run to record the package's class load order.
+   *
+   * @return training main class
+   */
+  Property<String> getTrainingMainClass();
+
+  /**
+   * Arguments for the class load order training run.
+   *
+   * @return training arguments
+   */
+  ListProperty<String> getTrainingArguments();
+
+  /**
+   * Maximum size in bytes of the package jar, enforced by the package report.
+   * <p>
+   * The package report only runs as part of {@code check} when a size or class count budget is set.
+   *
+   * @return package size budget
+   */
+  Property<Long> getSizeBudget();
+
+  /**
+   * Maximum number of classes in the package jar, enforced by the package report.
+   *
+   * @return package class count budget
+   */
+  Property<Integer> getClassCountBudget();
+
   interface OptionalFeature extends Named, CustomCapabilities {}
 
   interface Javadoc {
@@ -17,6 +17,8 @@
 
 package org.terracotta.build.plugins.packaging;
 
+import com.github.jengelman.gradle.plugins.shadow.relocation.Relocator;
+import com.github.jengelman.gradle.plugins.shadow.relocation.SimpleRelocator;
 import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar;
 import org.gradle.api.Action;
 import org.gradle.api.DomainObjectSet;
@@ -26,46 +28,56 @@ import org.gradle.api.NamedDomainObjectProvider;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ConfigurationContainer;
+import org.gradle.api.artifacts.ArtifactCollection;
 import org.gradle.api.artifacts.ConsumableConfiguration;
 import org.gradle.api.artifacts.Dependency;
 import org.gradle.api.artifacts.DependencyScopeConfiguration;
 import org.gradle.api.artifacts.ModuleDependency;
-import org.gradle.api.artifacts.ModuleVersionIdentifier;
 import org.gradle.api.artifacts.ResolvableConfiguration;
 import org.gradle.api.artifacts.component.ComponentIdentifier;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 import org.gradle.api.artifacts.component.ProjectComponentIdentifier;
 import org.gradle.api.artifacts.dsl.DependencyHandler;
+import org.gradle.api.artifacts.result.ResolutionResult;
 import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.artifacts.result.ResolvedComponentResult;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.attributes.Category;
 import org.gradle.api.attributes.Usage;
 import org.gradle.api.capabilities.Capability;
 import org.gradle.api.component.AdhocComponentWithVariants;
 import org.gradle.api.file.DuplicatesStrategy;
 import org.gradle.api.file.FileCollection;
-import org.gradle.api.file.FileTree;
 import org.gradle.api.internal.artifacts.configurations.ConfigurationContainerInternal;
 import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
 import org.gradle.api.internal.artifacts.dependencies.DefaultDependencyConstraint;
 import org.gradle.api.plugins.BasePlugin;
 import org.gradle.api.plugins.jvm.internal.JvmEcosystemAttributesDetails;
 import org.gradle.api.plugins.jvm.internal.JvmPluginServices;
+import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
-import org.gradle.api.tasks.Sync;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.specs.Spec;
 import org.gradle.api.tasks.TaskContainer;
 import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.bundling.AbstractArchiveTask;
 import org.gradle.api.tasks.bundling.Jar;
-import org.gradle.internal.resolve.ArtifactResolveException;
 import org.gradle.jvm.toolchain.JavaLanguageVersion;
 import org.gradle.language.base.plugins.LifecycleBasePlugin;
 import org.terracotta.build.plugins.JavaVersionPlugin;
+import org.terracotta.build.ClassLoadTrace;
 import org.terracotta.build.plugins.PackagePlugin;
 
 import javax.inject.Inject;
-import java.io.File;
 import java.util.Collections;
-import java.util.Optional;
+import java.util.HashSet;
+import java.util.Map;
 
 import static org.gradle.api.artifacts.Dependency.DEFAULT_CONFIGURATION;
+import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
+import static org.gradle.api.artifacts.type.ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE;
+import static org.gradle.api.artifacts.type.ArtifactTypeDefinition.JAR_TYPE;
 import static org.gradle.api.attributes.DocsType.JAVADOC;
 import static org.gradle.api.attributes.DocsType.SOURCES;
 import static org.gradle.api.attributes.java.TargetJvmVersion.TARGET_JVM_VERSION_ATTRIBUTE;
@@ -91,6 +103,7 @@ public abstract class PackageInternal implements Package {
   public static final String CONTENTS_CONFIGURATION_NAME = "contents";
   public static final String CONTENTS_API_CONFIGURATION_NAME = "contentsApi";
   public static final String CONTENTS_RUNTIME_CLASSPATH_CONFIGURATION_NAME = "contentsRuntimeClasspath";
+  public static final String RELOCATED_CONTENTS_RUNTIME_CLASSPATH_CONFIGURATION_NAME = "relocatedContentsRuntimeClasspath";
   public static final String CONTENTS_SOURCES_CONFIGURATION_NAME = "contentsSources";
   public static final String CONTENTS_SOURCES_ELEMENTS_CONFIGURATION_NAME = "contentsSourcesElements";
 
@@ -106,6 +119,10 @@ public abstract class PackageInternal implements Package {
 
   public static final String SOURCES_TASK_NAME = "sources";
 
+  private static final String NOT_DEVELOPMENT_MODE = "Packaging is not in development mode";
+
+  private Spec<ComponentIdentifier> packagedComponents = id -> true;
+
   @Inject
   public abstract Project getProject();
 
@@ -116,6 +133,28 @@ public abstract class PackageInternal implements Package {
 
   public abstract DomainObjectSet<Capability> getCapabilities();
 
+  /**
+   * The name of the task producing the final packaged jar. This is the jar task itself, unless its output is
+   * post-processed by another archive task (as for OSGi bundles).
+   *
+   * @return the archive task name
+   */
+  public abstract Property<String> getArchiveTaskName();
+
+  public Provider<AbstractArchiveTask> getArchiveTask() {
+    return getArchiveTaskName().flatMap(name -> getProject().getTasks().named(name, AbstractArchiveTask.class));
+  }
+
+  /**
+   * The components of this package's contents classpaths that are packaged: everything on the package's unpackaged
+   * runtime classpath is left out. Use this as the component filter of any artifact view of the contents.
+   *
+   * @return packaged component filter
+   */
+  public Spec<ComponentIdentifier> packagedComponents() {
+    return packagedComponents;
+  }
+
   @Override
   public void withSourcesJar() {
     TaskContainer tasks = getProject().getTasks();
@@ -126,6 +165,7 @@ public abstract class PackageInternal implements Package {
       jar.from(tasks.named(getSourcesTaskName()));
       jar.from(tasks.named(getJarTaskName()), spec -> spec.include("META-INF/**", "LICENSE", "NOTICE"));
       jar.getArchiveClassifier().set(kebabName("sources"));
+      jar.onlyIf(NOT_DEVELOPMENT_MODE, t -> !isDevelopmentMode());
     });
 
     ConfigurationContainer configurations = getProject().getConfigurations();
@@ -144,6 +184,39 @@ public abstract class PackageInternal implements Package {
     tasks.named(LifecycleBasePlugin.ASSEMBLE_TASK_NAME).configure(task -> task.dependsOn(sourcesJar));
   }
 
+  @Override
+  public void withRelease(int release) {
+    ConfigurationContainerInternal configurations = (ConfigurationContainerInternal) getProject().getConfigurations();
+    TaskContainer tasks = getProject().getTasks();
+    String releaseName = "java" + release;
+
+    Provider<DependencyScopeConfiguration> contents = configurations.dependencyScope(camelName(releaseName + "Contents"), c -> c
+        .setDescription(description("Java " + release + " versioned contents of {0} package."))
+    );
+
+    Provider<ResolvableConfiguration> contentsRuntimeClasspath = configurations.resolvable(camelName(releaseName + "ContentsRuntimeClasspath"), c -> {
+      c.extendsFrom(contents.get());
+      c.setDescription(description("Runtime classpath of {0} Java " + release + " versioned package contents."));
+      c.setTransitive(false);
+      getJvmPluginServices().configureAsRuntimeClasspath(c);
+      c.attributes(attr -> attr.attribute(TARGET_JVM_VERSION_ATTRIBUTE, release)
+          .attribute(Usage.USAGE_ATTRIBUTE, getProject().getObjects().named(Usage.class, UNPACKAGED_JAVA_RUNTIME)));
+    });
+
+    TaskProvider<PackagePlugin.VersionedContents> versionedContents = tasks.register(camelName(releaseName + "VersionedContents"), PackagePlugin.VersionedContents.class, task -> {
+      task.setDescription(description("Extracts {0} Java " + release + " versioned package contents."));
+      task.getContents().from(contentsRuntimeClasspath);
+      task.getRelease().set(release);
+      task.getRelocations().set(getRelocations());
+      task.getDestinationDir().convention(getProject().getLayout().getBuildDirectory().dir(kebabName(releaseName + "-versioned-contents")));
+    });
+
+    tasks.named(getJarTaskName(), PackageJar.class, jar -> {
+      jar.from(versionedContents);
+      jar.getManifest().getAttributes().put("Multi-Release", "true");
+    });
+  }
+
   @Override
   public void withJavadocJar(Action<Javadoc> action) {
     Javadoc javadocSettings = getProject().getObjects().newInstance(JavadocInternal.class);
@@ -164,11 +237,13 @@ public abstract class PackageInternal implements Package {
         getJvmPluginServices().configureAttributes(c, details -> details.documentation(JAVADOC).asJar());
       });
 
-      TaskProvider<Jar> javadocJar = tasks.register(camelName("javadocJar"), Jar.class, jar -> {
+      TaskProvider<PackagePlugin.MergeArchives> javadocJar = tasks.register(camelName("javadocJar"), PackagePlugin.MergeArchives.class, jar -> {
         jar.setDescription("Assembles a jar archive containing the inherited javadoc.");
         jar.setGroup(BasePlugin.BUILD_GROUP);
-        jar.from(javadocJars.flatMap(FileCollection::getElements).map(e -> e.stream().map(getProject()::zipTree).toArray())).exclude("LICENSE");
+        jar.getArchives().from(javadocJars);
+        jar.exclude("LICENSE");
         jar.getArchiveClassifier().set(kebabName("javadoc"));
+        jar.onlyIf(NOT_DEVELOPMENT_MODE, t -> !isDevelopmentMode());
       });
 
       Provider<ConsumableConfiguration> javadocElements = configurations.consumable(camelName(JAVADOC_ELEMENTS_CONFIGURATION_NAME), c -> {
@@ -205,12 +280,14 @@ public abstract class PackageInternal implements Package {
         task.getModularity().getInferModulePath().set(false);
         task.setClasspath(javadocClasspath.get());
         task.setDestinationDir(getProject().getLayout().getBuildDirectory().dir(kebabName(JAVADOC_TASK_NAME)).get().getAsFile());
+        task.onlyIf(NOT_DEVELOPMENT_MODE, t -> !isDevelopmentMode());
       });
       TaskProvider<Jar> javadocJar = tasks.register(camelName("javadocJar"), Jar.class, jar -> {
         jar.setDescription(description("Assembles a jar archive containing {0} packaged javadoc."));
         jar.setGroup(BasePlugin.BUILD_GROUP);
         jar.from(javadoc);
         jar.getArchiveClassifier().set(kebabName("javadoc"));
+        jar.onlyIf(NOT_DEVELOPMENT_MODE, t -> !isDevelopmentMode());
       });
 
       Provider<ConsumableConfiguration> javadocElements = configurations.consumable(camelName(JAVADOC_ELEMENTS_CONFIGURATION_NAME), c -> {
@@ -262,6 +339,26 @@ public abstract class PackageInternal implements Package {
       c.attributes(attr -> attr.attribute(Usage.USAGE_ATTRIBUTE, getProject().getObjects().named(Usage.class, UNPACKAGED_JAVA_RUNTIME)));
     });
 
+    getPreRelocate().convention(false);
+    getArchiveTaskName().convention(getJarTaskName());
+    getIncrementalPackaging().convention(false);
+    getMinimize().convention(false);
+    String relocation = camelName("relocated");
+    dependencies.registerTransform(PackagePlugin.RelocateJar.class, spec -> {
+      spec.getFrom().attribute(ARTIFACT_TYPE_ATTRIBUTE, JAR_TYPE).attribute(PackagePlugin.RELOCATION_ATTRIBUTE, PackagePlugin.NOT_RELOCATED);
+      spec.getTo().attribute(ARTIFACT_TYPE_ATTRIBUTE, JAR_TYPE).attribute(PackagePlugin.RELOCATION_ATTRIBUTE, relocation);
+      spec.parameters(parameters -> parameters.getRelocations().set(getRelocations()));
+    });
+
+    NamedDomainObjectProvider<ResolvableConfiguration> relocatedContentsRuntimeClasspath = configurations.resolvable(camelName(RELOCATED_CONTENTS_RUNTIME_CLASSPATH_CONFIGURATION_NAME), c -> {
+      c.extendsFrom(contents.get());
+      c.setDescription(description("Pre-relocated runtime classpath of {0} package contents."));
+      c.attributes(attr -> attr.attributeProvider(TARGET_JVM_VERSION_ATTRIBUTE, javaCompileVersion));
+      getJvmPluginServices().configureAsRuntimeClasspath(c);
+      c.attributes(attr -> attr.attribute(Usage.USAGE_ATTRIBUTE, getProject().getObjects().named(Usage.class, UNPACKAGED_JAVA_RUNTIME))
+          .attribute(PackagePlugin.RELOCATION_ATTRIBUTE, relocation));
+    });
+
     /*
      * The variant metadata rules are not complex enough, nor applied uniformly enough to give us the "transient sources"
      * configuration that we need. Instead, we populate the contentSourcesElements configuration using the resolved
@@ -269,7 +366,7 @@ public abstract class PackageInternal implements Package {
      */
     Provider<DependencyScopeConfiguration> contentsSources = configurations.dependencyScope(camelName(CONTENTS_SOURCES_CONFIGURATION_NAME), c -> c
         .setVisible(false)
-        .withDependencies(config -> contentsRuntimeClasspath.get().getIncoming().artifactView(view -> {}).getArtifacts()
+        .withDependencies(config -> contentsRuntimeClasspath.get().getIncoming().artifactView(view -> view.componentFilter(packagedComponents)).getArtifacts()
             .getResolvedArtifacts().get().stream().map(ResolvedArtifactResult::getVariant).forEach(variant -> {
               ComponentIdentifier id = variant.getOwner();
               Dependency dependency;
@@ -295,26 +392,18 @@ public abstract class PackageInternal implements Package {
     });
 
 
-    Provider<FileCollection> sourcesTree = getProject().provider(() -> contentsSourcesElements.get().getResolvedConfiguration().getLenientConfiguration().getAllModuleDependencies().stream().flatMap(d -> d.getModuleArtifacts().stream()).map(artifact -> {
-      try {
-        return Optional.of(artifact.getFile());
-      } catch (ArtifactResolveException e) {
-        return Optional.<File>empty();
-      }
-    }).filter(Optional::isPresent).map(Optional::get).distinct().map(file -> {
-      if (file.isFile()) {
-        return getProject().zipTree(file);
-      } else {
-        return getProject().fileTree(file);
-      }
-    }).reduce(FileTree::plus).orElse(getProject().files().getAsFileTree()));
-
-    tasks.register(getSourcesTaskName(), Sync.class, sync -> {
-      sync.setDescription(description("Collects the sources contributing to {0} packaged artifact."));
-      sync.setGroup(DOCUMENTATION_GROUP);
-      sync.dependsOn(contentsSourcesElements);
-      sync.from(sourcesTree, spec -> spec.exclude("META-INF/**"));
-      sync.into(getProject().getLayout().getBuildDirectory().dir(kebabName("sources")));
+    Provider<FileCollection> sourceTrees = contentsSourcesElements.map(c -> c.getIncoming().artifactView(view -> {
+      view.setLenient(true);
+      view.getAttributes().attribute(ARTIFACT_TYPE_ATTRIBUTE, PackagePlugin.EXTRACTED_SOURCES_TYPE);
+    }).getFiles());
+
+    tasks.register(getSourcesTaskName(), PackagePlugin.AssembleSources.class, task -> {
+      task.setDescription(description("Collects the sources contributing to {0} packaged artifact."));
+      task.setGroup(DOCUMENTATION_GROUP);
+      task.getSourceTrees().from(sourceTrees);
+      task.getExcludes().add("META-INF/**");
+      task.getDestinationDir().convention(getProject().getLayout().getBuildDirectory().dir(kebabName("sources")));
+      task.onlyIf(NOT_DEVELOPMENT_MODE, t -> !isDevelopmentMode());
     });
 
     Provider<DependencyScopeConfiguration> api = configurations.dependencyScope(camelName(API_CONFIGURATION_NAME),
@@ -354,20 +443,87 @@ public abstract class PackageInternal implements Package {
               .attribute(Usage.USAGE_ATTRIBUTE, getProject().getObjects().named(Usage.class, UNPACKAGED_JAVA_RUNTIME)));
         });
 
-    TaskProvider<ShadowJar> shadowJar = tasks.register(getJarTaskName(), ShadowJar.class, shadow -> {
+    /*
+     * Relocations applied by the jar task itself, rather than by pre-relocating the contents.
+     */
+    Provider<Map<String, String>> jarRelocations = getPreRelocate().zip(getRelocations(), (preRelocate, relocations) ->
+        preRelocate ? Collections.<String, String>emptyMap() : relocations);
+
+    TaskProvider<PackageJar> shadowJar = tasks.register(getJarTaskName(), PackageJar.class, shadow -> {
       shadow.setDescription(description("Assembles a jar archive containing {0} packaged classes."));
       shadow.setGroup(BasePlugin.BUILD_GROUP);
 
-      shadow.getConfigurations().set(Collections.singletonList(contentsRuntimeClasspath.get()));
+      shadow.getConfigurations().set(getPreRelocate().map(preRelocate ->
+          Collections.singletonList(preRelocate ? relocatedContentsRuntimeClasspath.get() : contentsRuntimeClasspath.get())));
+      shadow.getIncludedDependencies().setFrom(shadow.getConfigurations().map(configs -> configs.stream().map(c -> c.getIncoming().artifactView(view ->
+          view.componentFilter(packagedComponents)).getFiles()).collect(toList())));
+      shadow.getRelocators().addAll(getPreRelocate().zip(getRelocations(), (preRelocate, relocations) -> {
+        if (preRelocate) {
+          return Collections.<Relocator>emptyList();
+        } else {
+          return relocations.entrySet().stream().<Relocator>map(e -> new SimpleRelocator(e.getKey(), e.getValue(), Collections.emptyList(), Collections.emptyList())).collect(toList());
+        }
+      }));
       shadow.getArchiveClassifier().set(kebabName(""));
 
       shadow.filesMatching("META-INF/services/**", s -> s.setDuplicatesStrategy(DuplicatesStrategy.INCLUDE));
       shadow.mergeServiceFiles();
 
       shadow.exclude("META-INF/MANIFEST.MF");
+      shadow.getIncremental().set(getIncrementalPackaging());
+
+      shadow.getMinimize().set(getMinimize());
+      shadow.getMinimizationKeep().set(getMinimizationKeep());
+      shadow.getMinimizationRoots().from(shadow.getConfigurations().map(configs -> configs.stream().map(c -> c.getIncoming().artifactView(view ->
+          view.componentFilter(id -> id instanceof ProjectComponentIdentifier && packagedComponents.isSatisfiedBy(id))).getFiles()).collect(toList())));
+      shadow.getMinimizationReport().set(getProject().getLayout().getBuildDirectory().file("reports/minimize/" + getJarTaskName() + ".txt"));
+
+      shadow.getClassLoadOrder().set(getClassLoadOrder());
+      shadow.getClassLoadOrderRelocations().set(jarRelocations);
+
+      /*
+       * Deflating is most of the cost of re-packaging when iterating locally.
+       */
+      shadow.getStoreEntries().set(developmentMode());
+    });
+
+    Provider<ResolvableConfiguration> providedClasspath = configurations.resolvable(camelName("providedClasspath"), c -> {
+      c.setDescription(description("Classpath of {0} provided dependencies."));
+      c.extendsFrom(provided.get());
+      getJvmPluginServices().configureAsRuntimeClasspath(c);
+      c.attributes(attr -> attr.attributeProvider(TARGET_JVM_VERSION_ATTRIBUTE, javaCompileVersion));
+    });
+
+    TaskProvider<PackagePlugin.PackageReport> packageReport = tasks.register(camelName("packageReport"), PackagePlugin.PackageReport.class, task -> {
+      task.setDescription(description("Reports on the contents of the {0} package jar, enforcing its size budgets."));
+      task.setGroup(LifecycleBasePlugin.VERIFICATION_GROUP);
+      task.getPackageJar().set(getArchiveTask().flatMap(AbstractArchiveTask::getArchiveFile));
+      Provider<ArtifactCollection> contentsClasspath = getPreRelocate().map(preRelocate -> preRelocate ? relocatedContentsRuntimeClasspath.get() : contentsRuntimeClasspath.get())
+          .map(c -> c.getIncoming().artifactView(view -> view.componentFilter(packagedComponents)).getArtifacts());
+      task.getContents().from(contentsClasspath.map(ArtifactCollection::getArtifactFiles));
+      task.getContentArtifacts().set(contentsClasspath.flatMap(ArtifactCollection::getResolvedArtifacts));
+      task.getProvided().from(providedClasspath);
+      task.getRelocations().set(jarRelocations);
+      task.getLargestEntries().convention(20);
+      task.getSizeBudget().set(getSizeBudget());
+      task.getClassCountBudget().set(getClassCountBudget());
+      task.getReportFile().convention(getProject().getLayout().getBuildDirectory().file("reports/package/" + kebabName("package") + ".txt"));
+    });
+    /*
+     * The report is only part of the check lifecycle when there is a budget for it to enforce.
+     */
+    tasks.named(LifecycleBasePlugin.CHECK_TASK_NAME).configure(task -> task.dependsOn(getProject().provider(() ->
+        getSizeBudget().isPresent() || getClassCountBudget().isPresent() ? packageReport : Collections.emptyList())));
+
+    tasks.register(camelName("recordClassLoadOrder"), ClassLoadTrace.Record.class, task -> {
+      task.setDescription(description("Runs the training main class against {0} package contents, recording the order classes are loaded in."));
+      task.getMainClass().convention(getTrainingMainClass());
+      task.classpath(shadowJar.flatMap(ShadowJar::getConfigurations), maximalUnpackagedRuntimeClasspath);
+      task.getTrainingArguments().convention(getTrainingArguments());
+      task.getClassLoadLog().convention(getProject().getLayout().getBuildDirectory().file("package-training/" + kebabName("class-load") + ".log"));
     });
 
-    configurations.named(DEFAULT_CONFIGURATION).configure(c -> c.outgoing(o -> o.artifact(shadowJar)));
+    configurations.named(DEFAULT_CONFIGURATION).configure(c -> c.outgoing(o -> o.artifact(getArchiveTask())));
 
     Provider<ConsumableConfiguration> packagedApiElements = configurations.consumable(camelName(PACKAGED_API_ELEMENTS_CONFIGURATION_NAME), c -> {
       c.setDescription(description("API elements for {0} packaged artifact."));
@@ -376,7 +532,7 @@ public abstract class PackageInternal implements Package {
       c.attributes(attr -> attr.attributeProvider(TARGET_JVM_VERSION_ATTRIBUTE, javaCompileVersion));
       c.outgoing(o -> {
         getCapabilities().all(o::capability);
-        o.artifact(shadowJar);
+        o.artifact(getArchiveTask());
       });
     });
 
@@ -388,7 +544,7 @@ public abstract class PackageInternal implements Package {
 
       c.outgoing(o -> {
         getCapabilities().all(o::capability);
-        o.artifact(shadowJar);
+        o.artifact(getArchiveTask());
       });
     });
 
@@ -400,19 +556,29 @@ public abstract class PackageInternal implements Package {
     });
 
 
-    contentsRuntimeClasspath.configure(c -> c.getIncoming().beforeResolve(config -> {
-      maximalUnpackagedRuntimeClasspath.get().getResolvedConfiguration().getResolvedArtifacts().forEach(resolvedArtifact -> {
-        ModuleVersionIdentifier identifier = resolvedArtifact.getModuleVersion().getId();
-        c.exclude(mapOf(String.class, String.class, "group", identifier.getGroup(), "module", identifier.getName()));
-      });
-    }));
+    /*
+     * Everything on the maximal unpackaged runtime classpath is left out of the package contents. The unpackaged
+     * components are found once per package from the resolved graph alone (without resolving artifacts). The contents
+     * classpaths themselves are resolved unfiltered, and their artifacts are viewed through a single component filter:
+     * one set lookup per component, however many modules are unpackaged.
+     */
+    SetProperty<Object> unpackagedComponents = getProject().getObjects().setProperty(Object.class);
+    unpackagedComponents.value(maximalUnpackagedRuntimeClasspath.map(c -> {
+      ResolutionResult result = c.getIncoming().getResolutionResult();
+      ResolvedComponentResult root = result.getRoot();
+      return result.getAllComponents().stream()
+          .filter(component -> !component.equals(root) && !isPlatform(component))
+          .map(component -> componentKey(component.getId()))
+          .collect(toCollection(HashSet::new));
+    })).finalizeValueOnRead();
+    packagedComponents = id -> !unpackagedComponents.get().contains(componentKey(id));
 
     getProject().getComponents().named(COMPONENT_NAME, AdhocComponentWithVariants.class, java -> {
       java.addVariantsFromConfiguration(packagedApiElements.get(), variantDetails -> variantDetails.mapToMavenScope("compile"));
       java.addVariantsFromConfiguration(packagedRuntimeElements.get(), variantDetails -> variantDetails.mapToMavenScope("runtime"));
     });
 
-    tasks.named(LifecycleBasePlugin.ASSEMBLE_TASK_NAME).configure(task -> task.dependsOn(shadowJar));
+    tasks.named(LifecycleBasePlugin.ASSEMBLE_TASK_NAME).configure(task -> task.dependsOn(getArchiveTask()));
 
     implementation.configure(c -> provided.get().getDependencies().configureEach(dependency ->
         c.getDependencyConstraints().add(DefaultDependencyConstraint.strictly(dependency.getGroup(), dependency.getName(), dependency.getVersion()))));
@@ -446,7 +612,7 @@ public abstract class PackageInternal implements Package {
       c.attributes(attr -> attr.attributeProvider(TARGET_JVM_VERSION_ATTRIBUTE, javaCompileVersion));
       c.outgoing(o -> {
         feature.getCapabilities().all(o::capability);
-        o.artifact(getProject().getTasks().named(getJarTaskName()));
+        o.artifact(getArchiveTask());
       });
     });
 
@@ -457,7 +623,7 @@ public abstract class PackageInternal implements Package {
       c.attributes(attr -> attr.attributeProvider(TARGET_JVM_VERSION_ATTRIBUTE, javaCompileVersion));
       c.outgoing(outgoing -> {
         feature.getCapabilities().all(outgoing::capability);
-        outgoing.artifact(getProject().getTasks().named(getJarTaskName()));
+        outgoing.artifact(getArchiveTask());
       });
     });
 
@@ -489,6 +655,32 @@ public abstract class PackageInternal implements Package {
     });
   }
 
+  /*
+   * External modules are matched regardless of version: the contents may resolve a different version of a module than
+   * the unpackaged runtime classpath does.
+   */
+  private static Object componentKey(ComponentIdentifier id) {
+    if (id instanceof ModuleComponentIdentifier) {
+      return ((ModuleComponentIdentifier) id).getModuleIdentifier();
+    } else {
+      return id;
+    }
+  }
+
+  private static boolean isPlatform(ResolvedComponentResult component) {
+    Attribute<String> category = Attribute.of(Category.CATEGORY_ATTRIBUTE.getName(), String.class);
+    return !component.getVariants().isEmpty() && component.getVariants().stream().map(v -> v.getAttributes().getAttribute(category))
+        .allMatch(value -> Category.REGULAR_PLATFORM.equals(value) || Category.ENFORCED_PLATFORM.equals(value));
+  }
+
+  private Provider<Boolean> developmentMode() {
+    return getProject().getExtensions().getByType(PackagingExtension.class).getDevelopmentMode();
+  }
+
+  private boolean isDevelopmentMode() {
+    return developmentMode().get();
+  }
+
   protected abstract String camelName(String base);
 
   protected abstract String kebabName(String base);
@@ -511,6 +703,14 @@ public abstract class PackageInternal implements Package {
     return camelName(SOURCES_TASK_NAME);
   }
 
+  public String getOsgiManifestTaskName() {
+    return camelName("osgiManifest");
+  }
+
+  public String getBundleTaskName() {
+    return camelName("bundle");
+  }
+
   public String getPackagedRuntimeClasspathConfigurationName() {
     return camelName(PACKAGED_RUNTIME_CLASSPATH_CONFIGURATION_NAME);
   }
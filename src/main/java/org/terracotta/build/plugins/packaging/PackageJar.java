@@ -0,0 +1,553 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins.packaging;
+
+import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar;
+import com.github.jengelman.gradle.plugins.shadow.transformers.ServiceFileTransformer;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.java.archives.internal.ManifestInternal;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
+import org.terracotta.build.ClassLoadTrace;
+import org.terracotta.build.archive.EntryPatterns;
+import org.terracotta.build.archive.ZipReader;
+import org.terracotta.build.archive.ZipWriter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Shadow jar task used for packages, with an optional incremental mode.
+ * <p>
+ * In incremental mode an entry manifest, recording the content hash of each input and the input each archive entry
+ * came from, is kept alongside the task. On rebuild, entries from unchanged inputs are copied raw (still compressed)
+ * from the previous archive, and only entries from changed inputs are inflated and deflated again. Service files are
+ * always merged afresh.
+ * <p>
+ * The incremental mode only reproduces a subset of Shadow's behavior: the configured contents jars, exclude patterns
+ * and service file merging. If relocators, other transformers, include patterns or additional sources are configured
+ * on the task it falls back to a full Shadow build. Incrementally built archives always use constant entry timestamps.
+ * <p>
+ * Either way the jar can then be {@link #getMinimize() minimized}, removing classes that are unreachable from the
+ * project's own classes, and {@link #getClassLoadOrder() laid out} in class load order.
+ */
+public abstract class PackageJar extends ShadowJar {
+
+  private static final String MANIFEST = "META-INF/MANIFEST.MF";
+  private static final String SERVICES = "META-INF/services/";
+  private static final String STATE_VERSION = "1";
+
+  public PackageJar() {
+    getIncremental().convention(false);
+    getMinimize().convention(false);
+    getStoreEntries().convention(false);
+  }
+
+  /**
+   * Reuse the entries of unchanged inputs from the previous archive.
+   *
+   * @return {@code true} to package incrementally
+   */
+  @Input
+  public abstract Property<Boolean> getIncremental();
+
+  /**
+   * Remove classes not reachable from the minimization roots, services or kept classes.
+   *
+   * @return {@code true} to minimize the jar
+   * @see JarMinimizer
+   */
+  @Input
+  public abstract Property<Boolean> getMinimize();
+
+  /**
+   * Jars whose classes are the roots of the reachability analysis.
+   *
+   * @return minimization root jars
+   */
+  @Classpath
+  public abstract ConfigurableFileCollection getMinimizationRoots();
+
+  /**
+   * Classes to retain regardless of reachability.
+   *
+   * @return class name patterns
+   */
+  @Input
+  public abstract SetProperty<String> getMinimizationKeep();
+
+  @OutputFile
+  @Optional
+  public abstract RegularFileProperty getMinimizationReport();
+
+  /**
+   * Class load trace used to order the jar entries.
+   * <p>
+   * When present the manifest and service files are placed first, followed by the traced classes in the order they
+   * were first loaded, and then all remaining entries.
+   *
+   * @return class load trace
+   * @see ClassLoadTrace
+   */
+  @InputFile
+  @Optional
+  @PathSensitive(PathSensitivity.NONE)
+  public abstract RegularFileProperty getClassLoadOrder();
+
+  /**
+   * Relocations to apply to the class names in the class load trace, for traces recorded against unrelocated classes.
+   *
+   * @return class load trace relocations
+   */
+  @Input
+  public abstract MapProperty<String, String> getClassLoadOrderRelocations();
+
+  /**
+   * Store all entries uncompressed, regardless of the configured {@link #getEntryCompression() entry compression}.
+   *
+   * @return {@code true} to store entries
+   */
+  @Internal
+  public abstract Property<Boolean> getStoreEntries();
+
+  @Override
+  @Input
+  public ZipEntryCompression getEntryCompression() {
+    return getStoreEntries().get() ? ZipEntryCompression.STORED : super.getEntryCompression();
+  }
+
+  @Override
+  @TaskAction
+  protected void copy() {
+    Path stateFile = new File(getTemporaryDir(), "entries.txt").toPath();
+    State state = null;
+    if (getIncremental().get()) {
+      String ineligible = incrementalIneligibility();
+      if (ineligible == null) {
+        try {
+          state = incrementalCopy(stateFile);
+        } catch (IOException e) {
+          getLogger().info("Incremental packaging of {} failed, rebuilding in full", getName(), e);
+        }
+      } else {
+        getLogger().info("Packaging {} in full: {}", getName(), ineligible);
+      }
+    }
+
+    try {
+      if (state == null) {
+        Files.deleteIfExists(stateFile);
+        super.copy();
+      }
+      if (getMinimize().get()) {
+        minimize();
+      }
+      if (getClassLoadOrder().isPresent()) {
+        reorder(ClassLoadTrace.parse(getClassLoadOrder().get().getAsFile().toPath()));
+      }
+      if (state != null) {
+        state.save(stateFile, getArchiveFile().get().getAsFile().toPath());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void minimize() throws IOException {
+    Set<String> roots = new HashSet<>();
+    for (File root : getMinimizationRoots()) {
+      if (root.isFile()) {
+        try (ZipReader reader = ZipReader.open(root.toPath())) {
+          reader.getEntries().forEach(e -> roots.add(e.getName()));
+        }
+      }
+    }
+    roots.removeIf(name -> !name.endsWith(".class"));
+    if (roots.isEmpty() && getMinimizationKeep().get().isEmpty()) {
+      getLogger().warn("Not minimizing {}: there are no project classes or kept classes to use as roots", getName());
+      return;
+    }
+
+    Path archive = getArchiveFile().get().getAsFile().toPath();
+    Path minimized = Files.createTempFile(getTemporaryDir().toPath(), "minimized", ".jar");
+    JarMinimizer.Result result = new JarMinimizer(roots.stream()
+        .map(name -> name.substring(0, name.length() - ".class".length()).replaceFirst("^META-INF/versions/\\d+/", ""))
+        .collect(Collectors.toSet()), getMinimizationKeep().get()).minimize(archive, minimized);
+    Files.move(minimized, archive, StandardCopyOption.REPLACE_EXISTING);
+    if (getMinimizationReport().isPresent()) {
+      result.writeReport(getMinimizationReport().get().getAsFile().toPath());
+    }
+    getLogger().info("Minimized {}: removed {} classes", archive.getFileName(), result.getRemovedClasses().size());
+  }
+
+  private void reorder(ClassLoadTrace trace) throws IOException {
+    PackageRelocator relocator = new PackageRelocator(getClassLoadOrderRelocations().get());
+    Map<String, Integer> loadOrder = new HashMap<>();
+    for (String name : trace.getEntryNames()) {
+      loadOrder.putIfAbsent(relocator.relocatePath(name), loadOrder.size());
+    }
+
+    Path archive = getArchiveFile().get().getAsFile().toPath();
+    Path reordered = Files.createTempFile(getTemporaryDir().toPath(), "reordered", ".jar");
+    int hot = 0;
+    try (ZipReader reader = ZipReader.open(archive); ZipWriter writer = new ZipWriter(Files.newOutputStream(reordered))) {
+      List<ZipReader.Entry> entries = new ArrayList<>(reader.getEntries());
+      entries.sort(Comparator.comparingInt((ZipReader.Entry e) -> layoutGroup(e.getName(), loadOrder))
+          .thenComparingInt(e -> loadOrder.getOrDefault(e.getName(), 0)));
+      for (ZipReader.Entry entry : entries) {
+        writer.copy(reader, entry);
+        if (loadOrder.containsKey(entry.getName())) {
+          hot++;
+        }
+      }
+    }
+    Files.move(reordered, archive, StandardCopyOption.REPLACE_EXISTING);
+    getLogger().info("Laid out {} in class load order: {} of {} traced classes present", archive.getFileName(), hot, loadOrder.size());
+  }
+
+  private static int layoutGroup(String name, Map<String, Integer> loadOrder) {
+    if (name.equals("META-INF/") || name.equals(MANIFEST)) {
+      return 0;
+    } else if (name.startsWith(SERVICES)) {
+      return 1;
+    } else if (loadOrder.containsKey(name)) {
+      return 2;
+    } else {
+      return 3;
+    }
+  }
+
+  private String incrementalIneligibility() {
+    if (!getRelocators().get().isEmpty()) {
+      return "relocators are configured on the task";
+    } else if (!getTransformers().get().stream().allMatch(ServiceFileTransformer.class::isInstance)) {
+      return "resource transformers other than service file merging are configured";
+    } else if (!getIncludes().isEmpty()) {
+      return "include patterns are configured";
+    } else {
+      Set<File> inputs = inputs();
+      Path temporary = getTemporaryDir().toPath();
+      if (getSource().getFiles().stream().anyMatch(f -> !inputs.contains(f) && !f.toPath().startsWith(temporary))) {
+        return "sources other than the package contents are configured";
+      } else {
+        return null;
+      }
+    }
+  }
+
+  private Set<File> inputs() {
+    return new LinkedHashSet<>(getIncludedDependencies().getFiles());
+  }
+
+  private State incrementalCopy(Path stateFile) throws IOException {
+    Path archive = getArchiveFile().get().getAsFile().toPath();
+    int method = getEntryCompression() == ZipEntryCompression.STORED ? ZipWriter.STORED : ZipWriter.DEFLATED;
+    Predicate<String> excluded = EntryPatterns.anyMatch(getExcludes());
+    String fingerprint = STATE_VERSION + " " + method + " " + new TreeSet<>(getExcludes());
+
+    State previous = State.load(stateFile, fingerprint, archive);
+    State next = new State(fingerprint);
+
+    Path temporary = Files.createTempFile(getTemporaryDir().toPath(), "package", ".jar");
+    int reused = 0;
+    int rewritten = 0;
+    try (ZipReader previousArchive = previous.isEmpty() ? null : ZipReader.open(archive);
+         ZipWriter writer = new ZipWriter(Files.newOutputStream(temporary))) {
+      writer.directory("META-INF/", ZipWriter.DEFAULT_DIRECTORY_MODE);
+      ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+      ManifestInternal manifestInternal = (ManifestInternal) getManifest();
+      manifestInternal.setContentCharset(getManifestContentCharset());
+      manifestInternal.writeTo(manifest);
+      writer.entry(MANIFEST, method, ZipWriter.DEFAULT_FILE_MODE, manifest.toByteArray());
+
+      Map<String, Set<String>> services = new LinkedHashMap<>();
+      for (File file : inputs()) {
+        String hash = previous.hashOf(file);
+        if (hash == null) {
+          hash = file.isFile() ? hash(file.toPath()) : null;
+        }
+        next.input(file, hash);
+
+        try (Source input = file.isFile() ? new JarSource(file.toPath()) : new DirectorySource(file.toPath())) {
+          for (String name : input.names()) {
+            if (excluded.test(name) || writer.contains(name)) {
+              continue;
+            } else if (name.endsWith("/")) {
+              writer.directory(name, input.mode(name, ZipWriter.DEFAULT_DIRECTORY_MODE));
+            } else if (name.startsWith(SERVICES)) {
+              try (BufferedReader reader = new BufferedReader(new InputStreamReader(input.open(name), StandardCharsets.UTF_8))) {
+                Set<String> providers = services.computeIfAbsent(name, k -> new LinkedHashSet<>());
+                reader.lines().map(String::trim).filter(l -> !l.isEmpty() && !l.startsWith("#")).forEach(providers::add);
+              }
+            } else {
+              ZipReader.Entry reusable = hash != null && hash.equals(previous.sourceOf(name)) ? previousArchive.getEntry(name) : null;
+              if (reusable != null && reusable.getMethod() == method) {
+                writer.entry(name, reusable.getMethod(), reusable.getCrc(), reusable.getCompressedSize(), reusable.getSize(),
+                    input.mode(name, ZipWriter.DEFAULT_FILE_MODE), out -> previousArchive.copyRaw(reusable, out));
+                reused++;
+              } else {
+                try (InputStream in = input.open(name)) {
+                  writer.entry(name, method, input.mode(name, ZipWriter.DEFAULT_FILE_MODE), readAll(in));
+                }
+                rewritten++;
+              }
+              next.entry(name, hash);
+            }
+          }
+        }
+      }
+
+      for (Map.Entry<String, Set<String>> service : services.entrySet()) {
+        String content = service.getValue().stream().map(p -> p + "\n").collect(Collectors.joining());
+        writer.entry(service.getKey(), method, ZipWriter.DEFAULT_FILE_MODE, content.getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+
+    Files.createDirectories(archive.getParent());
+    Files.move(temporary, archive, StandardCopyOption.REPLACE_EXISTING);
+    getLogger().info("Packaged {} incrementally: {} entries reused, {} entries rewritten", archive.getFileName(), reused, rewritten);
+    return next;
+  }
+
+  private static String hash(Path file) throws IOException {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] buffer = new byte[64 * 1024];
+      try (InputStream in = Files.newInputStream(file)) {
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+          digest.update(buffer, 0, read);
+        }
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[64 * 1024];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      bytes.write(buffer, 0, read);
+    }
+    return bytes.toByteArray();
+  }
+
+  private interface Source extends Closeable {
+
+    List<String> names() throws IOException;
+
+    InputStream open(String name) throws IOException;
+
+    int mode(String name, int defaultMode);
+  }
+
+  private static class JarSource implements Source {
+
+    private final ZipReader reader;
+
+    JarSource(Path jar) throws IOException {
+      this.reader = ZipReader.open(jar);
+    }
+
+    @Override
+    public List<String> names() {
+      return reader.getEntries().stream().map(ZipReader.Entry::getName).collect(Collectors.toList());
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+      return reader.getInputStream(reader.getEntry(name));
+    }
+
+    @Override
+    public int mode(String name, int defaultMode) {
+      int mode = reader.getEntry(name).getMode();
+      return mode == 0 ? defaultMode : mode;
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  private static class DirectorySource implements Source {
+
+    private final Path root;
+
+    DirectorySource(Path root) {
+      this.root = root;
+    }
+
+    @Override
+    public List<String> names() throws IOException {
+      if (!Files.isDirectory(root)) {
+        return new ArrayList<>();
+      }
+      try (Stream<Path> files = Files.walk(root)) {
+        return files.filter(p -> !p.equals(root)).sorted().map(p -> {
+          String name = root.relativize(p).toString().replace(File.separatorChar, '/');
+          return Files.isDirectory(p) ? name + "/" : name;
+        }).collect(Collectors.toList());
+      }
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+      return Files.newInputStream(root.resolve(name));
+    }
+
+    @Override
+    public int mode(String name, int defaultMode) {
+      return defaultMode;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * The entry manifest: input hashes, and the input each archive entry was taken from.
+   * <p>
+   * Directory inputs are never hashed, so their entries are always rewritten.
+   */
+  private static class State {
+
+    private final String fingerprint;
+    private final Map<String, String[]> inputs = new HashMap<>();
+    private final Map<String, String> entries = new HashMap<>();
+
+    State(String fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+
+    static State load(Path stateFile, String fingerprint, Path archive) {
+      State state = new State(fingerprint);
+      if (!Files.isRegularFile(stateFile) || !Files.isRegularFile(archive)) {
+        return state;
+      }
+      try {
+        List<String> lines = Files.readAllLines(stateFile, StandardCharsets.UTF_8);
+        if (lines.size() < 2 || !lines.get(0).equals(fingerprint) || !lines.get(1).equals(stamp(archive.toFile()))) {
+          return state;
+        }
+        for (String line : lines.subList(2, lines.size())) {
+          String[] fields = line.split("\t", 4);
+          if (fields[0].equals("input")) {
+            state.inputs.put(fields[3], fields);
+          } else {
+            state.entries.put(fields[2], fields[1]);
+          }
+        }
+        return state;
+      } catch (IOException | RuntimeException e) {
+        return new State(fingerprint);
+      }
+    }
+
+    boolean isEmpty() {
+      return entries.isEmpty();
+    }
+
+    String hashOf(File file) {
+      String[] input = inputs.get(file.getAbsolutePath());
+      if (input != null && input[2].equals(stamp(file))) {
+        return input[1];
+      } else {
+        return null;
+      }
+    }
+
+    String sourceOf(String name) {
+      return entries.get(name);
+    }
+
+    void input(File file, String hash) {
+      if (hash != null) {
+        inputs.put(file.getAbsolutePath(), new String[] {"input", hash, stamp(file), file.getAbsolutePath()});
+      }
+    }
+
+    void entry(String name, String hash) {
+      if (hash != null) {
+        entries.put(name, hash);
+      }
+    }
+
+    void save(Path stateFile, Path archive) throws IOException {
+      List<String> lines = new ArrayList<>();
+      lines.add(fingerprint);
+      lines.add(stamp(archive.toFile()));
+      inputs.values().forEach(input -> lines.add(String.join("\t", input)));
+      entries.forEach((name, hash) -> lines.add("entry\t" + hash + "\t" + name));
+      Files.write(stateFile, lines, StandardCharsets.UTF_8);
+    }
+
+    private static String stamp(File file) {
+      return file.length() + ":" + file.lastModified();
+    }
+  }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins.packaging;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.terracotta.build.archive.ZipWriter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static java.util.Collections.list;
+
+/**
+ * Applies a package's relocations to classes, resource paths and service files.
+ * <p>
+ * Matching follows the semantics of Shadow's {@code SimpleRelocator}: a relocation applies to any class or path that
+ * starts with its pattern, and the first matching relocation wins. Relocations are not chained: a relocated name is
+ * never relocated again, so derived metadata (e.g. OSGi package exports) always names packages present in the jar.
+ */
+public class PackageRelocator {
+
+  private static final String SERVICES = "META-INF/services/";
+  private static final Pattern DESCRIPTOR = Pattern.compile("(\\[*L)(.+)");
+
+  private final List<Relocation> relocations = new ArrayList<>();
+  private final PrefixIndex classIndex = new PrefixIndex();
+  private final PrefixIndex pathIndex = new PrefixIndex();
+  private final Remapper remapper = new Remapper() {
+    @Override
+    public String map(String internalName) {
+      return relocatePath(internalName);
+    }
+
+    @Override
+    public Object mapValue(Object value) {
+      if (value instanceof String) {
+        return relocateString((String) value);
+      } else {
+        return super.mapValue(value);
+      }
+    }
+  };
+
+  /**
+   * Creates a relocator.
+   *
+   * @param relocations map of package patterns to their relocated destinations, in priority order
+   */
+  public PackageRelocator(Map<String, String> relocations) {
+    relocations.forEach((pattern, destination) -> {
+      Relocation relocation = new Relocation(pattern, destination);
+      classIndex.add(relocation.classPattern, this.relocations.size());
+      pathIndex.add(relocation.pathPattern, this.relocations.size());
+      this.relocations.add(relocation);
+    });
+  }
+
+  public boolean isEmpty() {
+    return relocations.isEmpty();
+  }
+
+  /**
+   * Relocate a class name in dotted form.
+   *
+   * @param className class name
+   * @return the relocated name, or the original if no relocation applies
+   */
+  public String relocateClassName(String className) {
+    int match = classIndex.match(className, PrefixIndex.NONE);
+    if (match < 0) {
+      return className;
+    } else {
+      Relocation relocation = relocations.get(match);
+      return relocation.classDestination + className.substring(relocation.classPattern.length());
+    }
+  }
+
+  /**
+   * Relocate a package name in dotted form.
+   * <p>
+   * A package is relocated as if it were a class name with a trailing {@code '.'}, so that a pattern naming exactly
+   * this package (with or without its trailing separator) applies.
+   *
+   * @param packageName package name
+   * @return the relocated package name, or the original if no relocation applies
+   */
+  public String relocatePackageName(String packageName) {
+    int match = classIndex.match(packageName, '.');
+    if (match < 0) {
+      return packageName;
+    } else {
+      Relocation relocation = relocations.get(match);
+      if (relocation.classPattern.length() <= packageName.length()) {
+        return relocation.classDestination + packageName.substring(relocation.classPattern.length());
+      } else {
+        String destination = relocation.classDestination;
+        return destination.isEmpty() ? destination : destination.substring(0, destination.length() - 1);
+      }
+    }
+  }
+
+  /**
+   * Relocate a slash separated path (or internal class name).
+   *
+   * @param path resource path
+   * @return the relocated path, or the original if no relocation applies
+   */
+  public String relocatePath(String path) {
+    int match = pathIndex.match(path, PrefixIndex.NONE);
+    if (match < 0) {
+      return path;
+    } else {
+      Relocation relocation = relocations.get(match);
+      return relocation.pathDestination + path.substring(relocation.pathPattern.length());
+    }
+  }
+
+  private String relocateString(String value) {
+    Matcher descriptor = DESCRIPTOR.matcher(value);
+    if (descriptor.matches()) {
+      String relocated = relocateString(descriptor.group(2));
+      return relocated.equals(descriptor.group(2)) ? value : descriptor.group(1) + relocated;
+    } else if (value.indexOf('/') < 0) {
+      return relocateClassName(value);
+    } else {
+      return relocatePath(value);
+    }
+  }
+
+  /**
+   * Relocate a class file.
+   *
+   * @param classFile class file bytes
+   * @return the relocated class file
+   */
+  public byte[] relocateClass(byte[] classFile) {
+    ClassReader reader = new ClassReader(classFile);
+    ClassWriter writer = new ClassWriter(0);
+    reader.accept(new ClassRemapper(writer, remapper), 0);
+    return writer.toByteArray();
+  }
+
+  /**
+   * Relocate the name of a jar entry.
+   *
+   * @param name entry name
+   * @return the relocated entry name
+   */
+  public String relocateEntryName(String name) {
+    if (name.startsWith(SERVICES) && name.length() > SERVICES.length()) {
+      return SERVICES + relocateClassName(name.substring(SERVICES.length()));
+    } else {
+      return relocatePath(name);
+    }
+  }
+
+  /**
+   * Write a relocated copy of a jar.
+   *
+   * @param input source jar
+   * @param output relocated jar
+   * @throws IOException on failure to read or write
+   */
+  public void relocateJar(Path input, Path output) throws IOException {
+    Set<String> written = new HashSet<>();
+    try (ZipFile zip = new ZipFile(input.toFile());
+         ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(output))) {
+      out.setLevel(Deflater.BEST_SPEED);
+      for (ZipEntry entry : list(zip.entries())) {
+        String name = relocateEntryName(entry.getName());
+        if (!written.add(name)) {
+          continue;
+        }
+        ZipEntry relocated = new ZipEntry(name);
+        relocated.setTimeLocal(ZipWriter.CONSTANT_TIME);
+        out.putNextEntry(relocated);
+        if (!entry.isDirectory()) {
+          try (InputStream in = zip.getInputStream(entry)) {
+            if (entry.getName().endsWith(".class")) {
+              out.write(relocateClass(readAll(in)));
+            } else if (entry.getName().startsWith(SERVICES)) {
+              relocateServiceFile(in, out);
+            } else {
+              copy(in, out);
+            }
+          }
+        }
+        out.closeEntry();
+      }
+    }
+  }
+
+  private void relocateServiceFile(InputStream in, OutputStream out) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    StringBuilder relocated = new StringBuilder();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      String provider = line.replaceFirst("#.*", "").trim();
+      relocated.append(provider.isEmpty() ? line : relocateClassName(provider)).append('\n');
+    }
+    out.write(relocated.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    copy(in, bytes);
+    return bytes.toByteArray();
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, read);
+    }
+  }
+
+  private static class Relocation {
+
+    private final String classPattern;
+    private final String classDestination;
+    private final String pathPattern;
+    private final String pathDestination;
+
+    Relocation(String pattern, String destination) {
+      this.classPattern = pattern.replace('/', '.');
+      this.classDestination = normalizeDestination(classPattern, destination.replace('/', '.'));
+      this.pathPattern = classPattern.replace('.', '/');
+      this.pathDestination = classDestination.replace('.', '/');
+    }
+
+    /*
+     * The destination carries a trailing separator if and only if the pattern does, so that the separator is neither
+     * lost nor doubled when the pattern's prefix is replaced. An empty pattern matches everything and so has no
+     * separator to follow: its destination is left as given.
+     */
+    private static String normalizeDestination(String pattern, String destination) {
+      if (pattern.isEmpty()) {
+        return destination;
+      }
+      String bare = destination.endsWith(".") ? destination.substring(0, destination.length() - 1) : destination;
+      return pattern.endsWith(".") && !bare.isEmpty() ? bare + "." : bare;
+    }
+  }
+
+  /**
+   * Character trie over relocation patterns, finding the first (highest priority) relocation whose pattern is a prefix
+   * of a name in a single pass over the name, without allocating.
+   */
+  static final class PrefixIndex {
+
+    static final int NONE = -1;
+
+    private final Node root = new Node();
+
+    void add(String pattern, int priority) {
+      Node node = root;
+      for (int i = 0; i < pattern.length(); i++) {
+        node = node.childOrCreate(pattern.charAt(i));
+      }
+      if (node.priority < 0) {
+        node.priority = priority;
+      }
+    }
+
+    /**
+     * Returns the priority of the first pattern that is a prefix of {@code name}, optionally followed by a single
+     * trailing character.
+     *
+     * @param name name to match
+     * @param trailing character virtually appended to the name, or {@link #NONE}
+     * @return the matching priority, or {@code -1} if no pattern matches
+     */
+    int match(String name, int trailing) {
+      int best = root.priority;
+      Node node = root;
+      int length = name.length();
+      for (int i = 0; i <= length && node != null; i++) {
+        if (i < length) {
+          node = node.child(name.charAt(i));
+        } else if (trailing != NONE) {
+          node = node.child((char) trailing);
+        } else {
+          break;
+        }
+        if (node != null && node.priority >= 0 && (best < 0 || node.priority < best)) {
+          best = node.priority;
+        }
+      }
+      return best;
+    }
+
+    private static final class Node {
+
+      private static final char[] NO_KEYS = new char[0];
+      private static final Node[] NO_CHILDREN = new Node[0];
+
+      private char[] keys = NO_KEYS;
+      private Node[] children = NO_CHILDREN;
+      private int priority = -1;
+
+      Node child(char c) {
+        int index = Arrays.binarySearch(keys, c);
+        return index < 0 ? null : children[index];
+      }
+
+      Node childOrCreate(char c) {
+        int index = Arrays.binarySearch(keys, c);
+        if (index >= 0) {
+          return children[index];
+        } else {
+          int insert = -(index + 1);
+          char[] newKeys = new char[keys.length + 1];
+          Node[] newChildren = new Node[children.length + 1];
+          System.arraycopy(keys, 0, newKeys, 0, insert);
+          System.arraycopy(children, 0, newChildren, 0, insert);
+          System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+          System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+          Node child = new Node();
+          newKeys[insert] = c;
+          newChildren[insert] = child;
+          keys = newKeys;
+          children = newChildren;
+          return child;
+        }
+      }
+    }
+  }
+}
@@ -18,8 +18,20 @@
 package org.terracotta.build.plugins.packaging;
 
 import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.api.provider.Property;
 
 public interface PackagingExtension extends Package {
 
   NamedDomainObjectContainer<? extends VariantPackage> getVariants();
+
+  /**
+   * Trade packaged artifact size for build speed during local development.
+   * <p>
+   * In development mode packaged jars are stored uncompressed, and sources and javadoc jars are not built. This
+   * defaults to the value of the {@code org.terracotta.build.package.developmentMode} Gradle property, and must not be
+   * enabled for builds that publish.
+   *
+   * @return {@code true} to enable development mode
+   */
+  Property<Boolean> getDevelopmentMode();
 }
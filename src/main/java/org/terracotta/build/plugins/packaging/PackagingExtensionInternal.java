@@ -19,6 +19,11 @@ package org.terracotta.build.plugins.packaging;
 
 import org.gradle.api.Action;
 import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.SetProperty;
 import org.gradle.api.tasks.Nested;
 
 public interface PackagingExtensionInternal extends PackagingExtension {
@@ -38,11 +43,66 @@ public interface PackagingExtensionInternal extends PackagingExtension {
     getDefaultPackage().withJavadocJar(action);
   }
 
+  @Override
+  default void withRelease(int release) {
+    getDefaultPackage().withRelease(release);
+  }
+
   @Override
   default NamedDomainObjectContainer<? extends OptionalFeature> getOptionalFeatures() {
     return getDefaultPackage().getOptionalFeatures();
   }
 
+  @Override
+  default MapProperty<String, String> getRelocations() {
+    return getDefaultPackage().getRelocations();
+  }
+
+  @Override
+  default Property<Boolean> getPreRelocate() {
+    return getDefaultPackage().getPreRelocate();
+  }
+
+  @Override
+  default Property<Boolean> getIncrementalPackaging() {
+    return getDefaultPackage().getIncrementalPackaging();
+  }
+
+  @Override
+  default Property<Boolean> getMinimize() {
+    return getDefaultPackage().getMinimize();
+  }
+
+  @Override
+  default SetProperty<String> getMinimizationKeep() {
+    return getDefaultPackage().getMinimizationKeep();
+  }
+
+  @Override
+  default RegularFileProperty getClassLoadOrder() {
+    return getDefaultPackage().getClassLoadOrder();
+  }
+
+  @Override
+  default Property<String> getTrainingMainClass() {
+    return getDefaultPackage().getTrainingMainClass();
+  }
+
+  @Override
+  default ListProperty<String> getTrainingArguments() {
+    return getDefaultPackage().getTrainingArguments();
+  }
+
+  @Override
+  default Property<Long> getSizeBudget() {
+    return getDefaultPackage().getSizeBudget();
+  }
+
+  @Override
+  default Property<Integer> getClassCountBudget() {
+    return getDefaultPackage().getClassCountBudget();
+  }
+
   @Nested
   DefaultPackageInternal getDefaultPackage();
 
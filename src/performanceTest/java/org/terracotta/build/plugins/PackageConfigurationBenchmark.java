@@ -0,0 +1,103 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Measures the configuration cost of the packaging plugin for builds of N variants &times; M optional features
+ * &times; K dependencies.
+ * <p>
+ * Each scenario reports the median configuration time and number of configurations resolved at configuration time,
+ * measured in the shared TestKit daemon, and the heap in use once configuration completes, measured in a fresh daemon.
+ * These are checked against the thresholds in {@code configuration-thresholds.properties}, so that regressions in
+ * configuration cost fail the suite.
+ */
+public class PackageConfigurationBenchmark {
+
+  private static final Pattern METRIC = Pattern.compile("(\\w+)=(\\d+)");
+  private static final int WARMUPS = 2;
+  private static final int ITERATIONS = 5;
+
+  @ParameterizedTest(name = "{0} variants x {1} features x {2} dependencies")
+  @CsvSource({"1, 0, 10", "5, 5, 50", "10, 10, 100"})
+  public void configure(int variants, int features, int dependencies, @TempDir Path root) throws Exception {
+    PackagingBuildFixture fixture = new PackagingBuildFixture(root);
+    fixture.generate(variants, features, dependencies);
+
+    GradleRunner runner = GradleRunner.create()
+        .withProjectDir(fixture.getProjectDir().toFile())
+        .withPluginClasspath()
+        .withArguments("help", "--offline", "--stacktrace");
+
+    for (int i = 0; i < WARMUPS; i++) {
+      runner.build();
+    }
+
+    Map<String, List<Long>> samples = new HashMap<>();
+    for (int i = 0; i < ITERATIONS; i++) {
+      metrics(runner.build()).forEach((metric, value) -> samples.computeIfAbsent(metric, k -> new ArrayList<>()).add(value));
+    }
+
+    String scenario = variants + "x" + features + "x" + dependencies;
+    for (String metric : new String[] {"configurationMs", "resolutions"}) {
+      List<Long> values = samples.get(metric);
+      assertThat(metric + " not reported", values, notNullValue());
+      Collections.sort(values);
+      long median = values.get(values.size() / 2);
+      System.out.printf("%s %s: median %d (min %d, max %d)%n", scenario, metric, median, values.get(0), values.get(values.size() - 1));
+      assertThat(scenario + " " + metric, median, lessThanOrEqualTo(PackagingBuildFixture.threshold(scenario + "." + metric)));
+    }
+
+    /*
+     * The shared TestKit daemon retains heap from earlier scenarios and tests, so heap is measured in a daemon of its own.
+     */
+    Long heap = metrics(runner.withTestKitDir(root.resolve("testkit").toFile()).build()).get("heapMb");
+    assertThat("heapMb not reported", heap, notNullValue());
+    System.out.printf("%s heapMb: %d (fresh daemon)%n", scenario, heap);
+    assertThat(scenario + " heapMb", heap, lessThanOrEqualTo(PackagingBuildFixture.threshold(scenario + ".heapMb")));
+  }
+
+  private static Map<String, Long> metrics(BuildResult result) {
+    String line = result.getOutput().lines().filter(l -> l.startsWith(PackagingBuildFixture.METRICS_PREFIX + " "))
+        .findFirst().orElseThrow(() -> new AssertionError("No metrics reported:\n" + result.getOutput()));
+    Map<String, Long> metrics = new HashMap<>();
+    Matcher matcher = METRIC.matcher(line);
+    while (matcher.find()) {
+      metrics.put(matcher.group(1), Long.parseLong(matcher.group(2)));
+    }
+    return metrics;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Times resolution of the packaged contents (the contents classpaths, filtered of the unpackaged runtime) of builds
+ * with 5 packages of 50 and of 200 dependencies each.
+ * <p>
+ * The median build time at 200 dependencies is checked against the {@code resolutionMs} threshold in
+ * {@code configuration-thresholds.properties}. Leaving out the unpackaged runtime must not cost more per module as
+ * modules are added, so the contents classpaths must carry no per-module exclude rules, and the growth in build time
+ * from 50 to 200 dependencies is checked against the {@code resolutionGrowthPercent} threshold.
+ */
+public class PackageContentsResolutionBenchmark {
+
+  private static final int PACKAGES = 5;
+  private static final int BASELINE_DEPENDENCIES = 50;
+  private static final int DEPENDENCIES = 200;
+  private static final int WARMUPS = 2;
+  private static final int ITERATIONS = 5;
+  private static final Pattern EXCLUDE_RULES = Pattern.compile("(\\d+) exclude rules");
+
+  @Test
+  public void resolveContents(@TempDir Path root) throws Exception {
+    long baseline = medianResolutionMs(root.resolve("baseline"), BASELINE_DEPENDENCIES);
+    long median = medianResolutionMs(root.resolve("scaled"), DEPENDENCIES);
+
+    String scenario = PACKAGES + "x0x" + DEPENDENCIES;
+    long growth = 100 * median / Math.max(1, baseline);
+    System.out.printf("%d packages: %d to %d dependencies grows median resolution %dms to %dms (%d%%)%n",
+        PACKAGES, BASELINE_DEPENDENCIES, DEPENDENCIES, baseline, median, growth);
+    assertThat(scenario + " resolutionMs", median, lessThanOrEqualTo(PackagingBuildFixture.threshold(scenario + ".resolutionMs")));
+    assertThat(scenario + " resolutionGrowthPercent", growth, lessThanOrEqualTo(PackagingBuildFixture.threshold(scenario + ".resolutionGrowthPercent")));
+  }
+
+  private static long medianResolutionMs(Path root, int dependencies) throws Exception {
+    PackagingBuildFixture fixture = new PackagingBuildFixture(root);
+    fixture.generate(PACKAGES, 0, dependencies);
+
+    GradleRunner runner = GradleRunner.create()
+        .withProjectDir(fixture.getProjectDir().toFile())
+        .withPluginClasspath()
+        .withArguments("resolveContents", "--offline", "--stacktrace");
+
+    for (int i = 0; i < WARMUPS; i++) {
+      runner.build();
+    }
+
+    List<Long> timings = new ArrayList<>();
+    for (int i = 0; i < ITERATIONS; i++) {
+      long start = System.nanoTime();
+      BuildResult result = runner.build();
+      timings.add(NANOSECONDS.toMillis(System.nanoTime() - start));
+      assertThat(result.getOutput(), containsString("contentsRuntimeClasspath: "));
+      Matcher excludeRules = EXCLUDE_RULES.matcher(result.getOutput());
+      while (excludeRules.find()) {
+        assertThat("exclude rules", Integer.parseInt(excludeRules.group(1)), is(0));
+      }
+    }
+
+    Collections.sort(timings);
+    long median = timings.get(timings.size() / 2);
+    System.out.printf("%d packages x %d dependencies: median %dms (min %dms, max %dms)%n",
+        PACKAGES, dependencies, median, timings.get(0), timings.get(timings.size() - 1));
+    return median;
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static java.lang.String.format;
+
+/**
+ * Generates a synthetic, offline build using the packaging plugin.
+ * <p>
+ * The build depends on a local Maven repository of generated modules. Module {@code lib-n} depends on
+ * {@code lib-(n/2)}, giving a shallow tree of transitive dependencies. Every package variant packages all modules,
+ * and declares every fourth module as an unpackaged implementation dependency. Each optional feature of each variant
+ * depends on a single module.
+ * <p>
+ * The settings script instruments the build: once all projects are evaluated it realizes every configuration and
+ * logs a {@value #METRICS_PREFIX} line reporting the configuration time, the number of configurations resolved
+ * during configuration, and the heap in use after a full collection.
+ */
+class PackagingBuildFixture {
+
+  static final String GROUP = "org.terracotta.benchmark";
+  static final String METRICS_PREFIX = "BENCHMARK";
+  static final String THRESHOLDS = "configuration-thresholds.properties";
+
+  private final Path root;
+
+  PackagingBuildFixture(Path root) {
+    this.root = root;
+  }
+
+  Path getProjectDir() {
+    return root.resolve("project");
+  }
+
+  Path getRepository() {
+    return root.resolve("repository");
+  }
+
+  void generate(int variants, int features, int dependencies) throws IOException {
+    for (int i = 0; i < dependencies; i++) {
+      writeModule(i);
+    }
+
+    Path project = Files.createDirectories(getProjectDir());
+    write(project.resolve("settings.gradle"), "rootProject.name = 'benchmark'\n\n"
+        + "def start = System.nanoTime()\n"
+        + "def resolutions = new java.util.concurrent.atomic.AtomicInteger()\n"
+        + "gradle.beforeProject { p ->\n"
+        + "  p.configurations.configureEach { c -> c.incoming.beforeResolve { resolutions.incrementAndGet() } }\n"
+        + "}\n"
+        + "gradle.projectsEvaluated { g ->\n"
+        + "  g.rootProject.allprojects { p -> p.configurations.each { } }\n"
+        + "  def elapsed = java.util.concurrent.TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)\n"
+        + "  System.gc()\n"
+        + "  def runtime = Runtime.getRuntime()\n"
+        + "  def heap = (runtime.totalMemory() - runtime.freeMemory()).intdiv(1024 * 1024)\n"
+        + format("  println \"%s configurationMs=${elapsed} resolutions=${resolutions.get()} heapMb=${heap}\"%n", METRICS_PREFIX)
+        + "}\n");
+
+    StringBuilder build = new StringBuilder()
+        .append("plugins {\n  id 'org.terracotta.build.package'\n}\n\n")
+        .append(format("repositories {%n  maven { url = uri('%s') }%n}%n%n", getRepository().toUri()))
+        .append("def packages = ['']\n")
+        .append("packaging {\n  variants {\n");
+    for (int v = 0; v < variants - 1; v++) {
+      build.append(format("    variant%d {%n      optionalFeatures {%n", v));
+      for (int f = 0; f < features; f++) {
+        build.append(format("        feature%d {}%n", f));
+      }
+      build.append("      }\n    }\n");
+    }
+    build.append("  }\n  optionalFeatures {\n");
+    for (int f = 0; f < features; f++) {
+      build.append(format("    feature%d {}%n", f));
+    }
+    build.append("  }\n}\n")
+        .append("packaging.variants.each { packages << it.name }\n\n")
+        .append("dependencies {\n")
+        .append("  packages.each { p ->\n")
+        .append("    def contents = p ? p + 'Contents' : 'contents'\n")
+        .append("    def implementation = p ? p + 'Implementation' : 'implementation'\n")
+        .append(format("    (0..<%d).each { i ->%n", dependencies))
+        .append(format("      add(contents, \"%s:lib-$i:1.0\")%n", GROUP))
+        .append(format("      if (i %% 4 == 3) { add(implementation, \"%s:lib-$i:1.0\") }%n", GROUP))
+        .append("    }\n")
+        .append(format("    (0..<%d).each { f ->%n", features))
+        .append("      def feature = p ? p + \"Feature${f}Implementation\" : \"feature${f}Implementation\"\n")
+        .append(format("      add(feature, \"%s:lib-${f %% %d}:1.0\")%n", GROUP, Math.max(1, dependencies)))
+        .append("    }\n  }\n}\n\n")
+        .append("tasks.register('resolveContents') {\n")
+        .append("  def contents = packages.collect { p ->\n")
+        .append("    def pkg = p ? packaging.variants.getByName(p) : packaging.defaultPackage\n")
+        .append("    configurations.named(p ? p + 'ContentsRuntimeClasspath' : 'contentsRuntimeClasspath').map { c ->\n")
+        .append("      [c.name, c.excludeRules.size(), c.incoming.artifactView { componentFilter(pkg.packagedComponents()) }.files]\n")
+        .append("    }\n")
+        .append("  }\n")
+        .append("  doLast {\n")
+        .append("    contents.each { c ->\n")
+        .append("      def (name, excludeRules, files) = c.get()\n")
+        .append("      logger.lifecycle(\"${name}: ${files.files.size()} files, ${excludeRules} exclude rules\")\n")
+        .append("    }\n")
+        .append("  }\n}\n");
+    write(project.resolve("build.gradle"), build.toString());
+  }
+
+  private void writeModule(int index) throws IOException {
+    String name = "lib-" + index;
+    Path dir = Files.createDirectories(getRepository().resolve(GROUP.replace('.', '/')).resolve(name).resolve("1.0"));
+
+    String dependency = index == 0 ? "" : format("  <dependencies>%n    <dependency>%n      <groupId>%s</groupId>%n"
+        + "      <artifactId>lib-%d</artifactId>%n      <version>1.0</version>%n    </dependency>%n  </dependencies>%n", GROUP, index / 2);
+    write(dir.resolve(name + "-1.0.pom"), format("<?xml version=\"1.0\" encoding=\"UTF-8\"?>%n"
+        + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">%n  <modelVersion>4.0.0</modelVersion>%n"
+        + "  <groupId>%s</groupId>%n  <artifactId>%s</artifactId>%n  <version>1.0</version>%n%s</project>%n", GROUP, name, dependency));
+
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+    try (OutputStream out = Files.newOutputStream(dir.resolve(name + "-1.0.jar")); JarOutputStream jar = new JarOutputStream(out, manifest)) {
+      jar.closeEntry();
+    }
+  }
+
+  /**
+   * Returns a benchmark threshold from {@value #THRESHOLDS}.
+   *
+   * @param key threshold key
+   * @return the threshold
+   * @throws IOException on failure to read the thresholds
+   */
+  static long threshold(String key) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = PackagingBuildFixture.class.getResourceAsStream(THRESHOLDS)) {
+      if (in == null) {
+        throw new AssertionError("Missing " + THRESHOLDS);
+      }
+      properties.load(in);
+    }
+    String threshold = properties.getProperty(key);
+    if (threshold == null) {
+      throw new AssertionError("No threshold for " + key);
+    }
+    return Long.parseLong(threshold.trim());
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
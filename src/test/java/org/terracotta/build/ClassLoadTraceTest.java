@@ -0,0 +1,64 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+public class ClassLoadTraceTest {
+
+  @Test
+  public void testLegacyFormat(@TempDir Path dir) throws IOException {
+    Path log = dir.resolve("class-load.log");
+    Files.write(log, asList(
+        "[Opened /usr/lib/jvm/jre/lib/rt.jar]",
+        "[Loaded java.lang.Object from /usr/lib/jvm/jre/lib/rt.jar]",
+        "[Loaded org.example.Main from file:/tool/lib/tool.jar]",
+        "program output",
+        "[Loaded java.lang.Object from /usr/lib/jvm/jre/lib/rt.jar]"), StandardCharsets.UTF_8);
+
+    ClassLoadTrace trace = ClassLoadTrace.parse(log);
+
+    assertThat(trace.getClasses(), contains("java.lang.Object", "org.example.Main"));
+    assertThat(trace.getEntryNames(), contains("java/lang/Object.class", "org/example/Main.class"));
+  }
+
+  @Test
+  public void testUnifiedFormat(@TempDir Path dir) throws IOException {
+    Path log = dir.resolve("class-load.log");
+    Files.write(log, asList(
+        "[0.005s][info][class,load] java.lang.Object source: shared objects file",
+        "[0.041s][info][class,load] org.example.Main source: file:/tool/lib/tool.jar",
+        "[0.042s][info][class,load ] org.example.Main$Inner source: file:/tool/lib/tool.jar",
+        "[0.050s][info][gc] Using Serial",
+        "program output"), StandardCharsets.UTF_8);
+
+    ClassLoadTrace trace = ClassLoadTrace.parse(log);
+
+    assertThat(trace.getClasses(), contains("java.lang.Object", "org.example.Main", "org.example.Main$Inner"));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class FileMirrorTest {
+
+  @Test
+  public void testMirrorCopiesWhenNotLinking(@TempDir Path dir) throws IOException {
+    Path source = write(dir.resolve("source/a.jar"), "a");
+    Path destination = dir.resolve("destination");
+
+    FileMirror mirror = FileMirror.mirror(singleton("a.jar", source), destination, false);
+
+    assertThat(mirror.getCopied(), is(1));
+    assertThat(mirror.getLinked(), is(0));
+    assertThat(Files.isSameFile(source, destination.resolve("a.jar")), is(false));
+
+    write(destination.resolve("a.jar"), "modified");
+    assertThat(read(source), is("a"));
+  }
+
+  @Test
+  public void testMirrorLinksWhenLinking(@TempDir Path dir) throws IOException {
+    Path source = write(dir.resolve("source/a.jar"), "a");
+    Path destination = dir.resolve("destination");
+
+    FileMirror mirror = FileMirror.mirror(singleton("a.jar", source), destination, true);
+
+    assertThat(mirror.getLinked() + mirror.getCopied(), is(1));
+    if (mirror.getLinked() == 1) {
+      assertThat(Files.isSameFile(source, destination.resolve("a.jar")), is(true));
+    }
+    assertThat(read(destination.resolve("a.jar")), is("a"));
+  }
+
+  @Test
+  public void testMirrorOnlyUpdatesChangedEntries(@TempDir Path dir) throws IOException {
+    Path a = write(dir.resolve("source/a.jar"), "a");
+    Path b = write(dir.resolve("source/b.jar"), "b");
+    Path c = write(dir.resolve("source/c.jar"), "c");
+    Path destination = dir.resolve("destination");
+
+    Map<String, Path> sources = new LinkedHashMap<>();
+    sources.put("a.jar", a);
+    sources.put("b.jar", b);
+    sources.put("nested/c.jar", c);
+    FileMirror.mirror(sources, destination, false);
+
+    write(b, "changed b");
+    sources.remove("nested/c.jar");
+    FileMirror mirror = FileMirror.mirror(sources, destination, false);
+
+    assertThat(mirror.getUnchanged(), is(1));
+    assertThat(mirror.getCopied(), is(1));
+    assertThat(mirror.getDeleted(), is(1));
+    assertThat(read(destination.resolve("b.jar")), is("changed b"));
+    assertThat(Files.exists(destination.resolve("nested")), is(false));
+  }
+
+  private static Map<String, Path> singleton(String name, Path source) {
+    Map<String, Path> sources = new LinkedHashMap<>();
+    sources.put(name, source);
+    return sources;
+  }
+
+  private static Path write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+}
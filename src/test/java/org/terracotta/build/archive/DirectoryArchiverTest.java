@@ -0,0 +1,186 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.list;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.terracotta.build.archive.ZipWriterTest.randomBytes;
+import static org.terracotta.build.archive.ZipWriterTest.read;
+
+public class DirectoryArchiverTest {
+
+  private static final String LONG_NAME = "lib/" + String.join("", Collections.nCopies(30, "long-")) + "name.jar";
+
+  @Test
+  public void testZipContents(@TempDir Path dir) throws IOException {
+    Path root = createTree(dir.resolve("tree"));
+    Path archive = dir.resolve("tool.zip");
+    new DirectoryArchiver(4, 6, dir).zip("tool", asList(root), archive);
+
+    try (ZipFile zip = new ZipFile(archive.toFile())) {
+      assertThat(list(zip.entries()).stream().map(ZipEntry::getName).collect(toList()),
+          contains("tool/", "tool/bin/", "tool/bin/run.sh", "tool/lib/", "tool/lib/big.txt", "tool/" + LONG_NAME, "tool/readme.txt"));
+      assertThat(zip.getEntry("tool/" + LONG_NAME).getMethod(), is(ZipEntry.STORED));
+      assertThat(zip.getEntry("tool/lib/big.txt").getMethod(), is(ZipEntry.DEFLATED));
+      for (String name : asList("bin/run.sh", LONG_NAME, "lib/big.txt", "readme.txt")) {
+        assertThat(name, read(zip.getInputStream(zip.getEntry("tool/" + name))), is(Files.readAllBytes(root.resolve(name))));
+      }
+    }
+    try (ZipReader reader = ZipReader.open(archive)) {
+      assertThat(reader.getEntry("tool/bin/run.sh").getMode(), is(0755));
+      assertThat(reader.getEntry("tool/readme.txt").getMode(), is(0644));
+    }
+    try (Stream<Path> spills = Files.list(dir).filter(p -> p.getFileName().toString().endsWith(".deflate"))) {
+      assertThat(spills.collect(toList()), is(empty()));
+    }
+  }
+
+  @Test
+  public void testTarGzContents(@TempDir Path dir) throws IOException {
+    Path root = createTree(dir.resolve("tree"));
+    Path archive = dir.resolve("tool.tar.gz");
+    new DirectoryArchiver(4, 6, dir).tarGz("tool", asList(root), archive);
+
+    List<TarWriterTest.Entry> entries;
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(archive))) {
+      entries = TarWriterTest.parse(read(in));
+    }
+    assertThat(entries.stream().map(e -> e.name).collect(toList()),
+        contains("tool/", "tool/bin/", "tool/bin/run.sh", "tool/lib/", "tool/lib/big.txt", "tool/" + LONG_NAME, "tool/readme.txt"));
+    Map<String, TarWriterTest.Entry> byName = entries.stream().collect(toMap(e -> e.name, Function.identity()));
+    assertThat(byName.get("tool/bin/run.sh").mode, is(0755));
+    assertThat(byName.get("tool/readme.txt").mode, is(0644));
+    assertThat(byName.get("tool/bin/").type, is('5'));
+    for (String name : asList("bin/run.sh", LONG_NAME, "lib/big.txt", "readme.txt")) {
+      assertThat(name, byName.get("tool/" + name).content, is(Files.readAllBytes(root.resolve(name))));
+    }
+  }
+
+  @Test
+  public void testArchivesAreReproducible(@TempDir Path dir) throws IOException {
+    Path root = createTree(dir.resolve("tree"));
+    DirectoryArchiver archiver = new DirectoryArchiver(4, 6, dir);
+    archiver.zip("tool", asList(root), dir.resolve("first.zip"));
+    new DirectoryArchiver(1, 6, dir).zip("tool", asList(root), dir.resolve("second.zip"));
+    archiver.tarGz("tool", asList(root), dir.resolve("first.tar.gz"));
+    new DirectoryArchiver(1, 6, dir).tarGz("tool", asList(root), dir.resolve("second.tar.gz"));
+
+    assertThat(Files.readAllBytes(dir.resolve("second.zip")), is(Files.readAllBytes(dir.resolve("first.zip"))));
+    assertThat(Files.readAllBytes(dir.resolve("second.tar.gz")), is(Files.readAllBytes(dir.resolve("first.tar.gz"))));
+  }
+
+  @Test
+  public void testEarlierRootsWin(@TempDir Path dir) throws IOException {
+    Path first = Files.createDirectories(dir.resolve("first"));
+    Path second = Files.createDirectories(dir.resolve("second"));
+    Files.write(first.resolve("a.txt"), "first".getBytes(StandardCharsets.UTF_8));
+    Files.write(second.resolve("a.txt"), "second".getBytes(StandardCharsets.UTF_8));
+    Path archive = dir.resolve("merged.zip");
+    new DirectoryArchiver(2, 6, dir).zip("", asList(first, second), archive);
+
+    try (ZipFile zip = new ZipFile(archive.toFile())) {
+      assertThat(new String(read(zip.getInputStream(zip.getEntry("a.txt"))), StandardCharsets.UTF_8), is("first"));
+    }
+  }
+
+  @Test
+  public void testSpillFilesAreDeletedOnFailure(@TempDir Path dir) throws IOException {
+    Path root = Files.createDirectories(dir.resolve("tree"));
+    Files.createSymbolicLink(root.resolve("a-broken.txt"), root.resolve("missing.txt"));
+    Files.write(root.resolve("b-big.txt"), compressible(9 * 1024 * 1024));
+    Path scratch = Files.createDirectories(dir.resolve("scratch"));
+    Path archive = dir.resolve("tool.zip");
+
+    assertThrows(IOException.class, () -> new DirectoryArchiver(2, 1, scratch).zip("tool", asList(root), archive));
+    try (Stream<Path> spills = Files.list(scratch)) {
+      assertThat(spills.collect(toList()), is(empty()));
+    }
+  }
+
+  @Test
+  public void testShellScriptsAreExecutableWithoutPosixAttributes(@TempDir Path dir) throws IOException {
+    Path zip = dir.resolve("fs.zip");
+    try (FileSystem fs = FileSystems.newFileSystem(URI.create("jar:" + zip.toUri()), Collections.singletonMap("create", "true"))) {
+      Path script = fs.getPath("/run.sh");
+      Files.write(script, new byte[] {1});
+      Path text = fs.getPath("/readme.txt");
+      Files.write(text, new byte[] {1});
+
+      assertThat(DirectoryArchiver.mode(script, false), is(ZipWriter.DEFAULT_EXECUTABLE_MODE));
+      assertThat(DirectoryArchiver.mode(text, false), is(ZipWriter.DEFAULT_FILE_MODE));
+      assertThat(DirectoryArchiver.mode(fs.getPath("/"), true), is(ZipWriter.DEFAULT_DIRECTORY_MODE));
+    }
+  }
+
+  private static Path createTree(Path root) throws IOException {
+    assumeTrue(root.getFileSystem().supportedFileAttributeViews().contains("posix"));
+    Files.createDirectories(root.resolve("bin"));
+    Files.createDirectories(root.resolve("lib"));
+    Path script = root.resolve("bin/run.sh");
+    Files.write(script, "#!/bin/sh\necho hello\n".getBytes(StandardCharsets.UTF_8));
+    Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-xr-x"));
+    Files.write(root.resolve(LONG_NAME), randomBytes(2000));
+    Files.write(root.resolve("lib/big.txt"), compressible(9 * 1024 * 1024));
+    Files.write(root.resolve("readme.txt"), "read me".getBytes(StandardCharsets.UTF_8));
+    for (Path path : asList(root.resolve(LONG_NAME), root.resolve("lib/big.txt"), root.resolve("readme.txt"))) {
+      Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-r--r--"));
+    }
+    for (Path path : asList(root, root.resolve("bin"), root.resolve("lib"))) {
+      Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rwxr-xr-x"));
+    }
+    return root;
+  }
+
+  private static byte[] compressible(int length) {
+    byte[] line = "line of highly compressible text\n".getBytes(StandardCharsets.US_ASCII);
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = line[i % line.length];
+    }
+    return bytes;
+  }
+}
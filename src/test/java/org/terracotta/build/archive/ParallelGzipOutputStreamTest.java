@@ -0,0 +1,99 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.archive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.terracotta.build.archive.ZipWriterTest.randomBytes;
+import static org.terracotta.build.archive.ZipWriterTest.read;
+
+public class ParallelGzipOutputStreamTest {
+
+  private static final int BLOCK_SIZE = 32 * 1024;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @AfterEach
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testMultiBlockOutputIsValidGzip() throws IOException {
+    byte[] data = mixedContent(10 * BLOCK_SIZE + 123);
+
+    assertThat(gunzip(gzip(data, 4)), is(data));
+  }
+
+  @Test
+  public void testEmptyAndExactBlockInputs() throws IOException {
+    assertThat(gunzip(gzip(new byte[0], 4)), is(new byte[0]));
+    byte[] exact = mixedContent(3 * BLOCK_SIZE);
+    assertThat(gunzip(gzip(exact, 4)), is(exact));
+  }
+
+  @Test
+  public void testOutputIsIndependentOfParallelism() throws IOException {
+    byte[] data = mixedContent(6 * BLOCK_SIZE + 7);
+
+    byte[] serial = gzip(data, 1);
+    assertThat(gzip(data, 4), is(serial));
+    assertThat(gzip(data, 4), is(serial));
+  }
+
+  private byte[] gzip(byte[] data, int parallelism) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, executor, parallelism, Deflater.DEFAULT_COMPRESSION, BLOCK_SIZE)) {
+      //uneven writes, so that blocks are filled across write boundaries
+      for (int offset = 0; offset < data.length; offset += 1000) {
+        out.write(data, offset, Math.min(1000, data.length - offset));
+      }
+    }
+    return compressed.toByteArray();
+  }
+
+  private static byte[] gunzip(byte[] compressed) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return read(in);
+    }
+  }
+
+  /*
+   * Half compressible text, half random bytes.
+   */
+  private static byte[] mixedContent(int length) {
+    byte[] data = randomBytes(length);
+    byte[] text = "the quick brown fox jumps over the lazy dog ".getBytes(StandardCharsets.US_ASCII);
+    for (int i = 0; i < length / 2; i++) {
+      data[i] = text[i % text.length];
+    }
+    return data;
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.archive;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.terracotta.build.archive.ZipWriterTest.randomBytes;
+
+public class TarWriterTest {
+
+  @Test
+  public void testHeadersAndContent() throws IOException {
+    byte[] content = randomBytes(1234);
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    try (TarWriter tar = new TarWriter(archive)) {
+      tar.directory("tool/", 0755);
+      tar.file("tool/run.sh", 0755, content.length, new ByteArrayInputStream(content));
+      tar.file("tool/empty.txt", 0644, 0, new ByteArrayInputStream(new byte[0]));
+    }
+
+    assertThat(archive.size() % (20 * 512), is(0));
+    List<Entry> entries = parse(archive.toByteArray());
+    assertThat(entries.stream().map(e -> e.name).collect(toList()), contains("tool/", "tool/run.sh", "tool/empty.txt"));
+    assertThat(entries.get(0).type, is('5'));
+    assertThat(entries.get(0).mode, is(0755));
+    assertThat(entries.get(1).type, is('0'));
+    assertThat(entries.get(1).mode, is(0755));
+    assertThat(entries.get(1).content, is(content));
+    assertThat(entries.get(1).mtime, is(TarWriter.CONSTANT_MTIME));
+    assertThat(entries.get(2).mode, is(0644));
+    assertThat(entries.get(2).content, is(new byte[0]));
+  }
+
+  @Test
+  public void testLongNames() throws IOException {
+    String prefixed = repeat("directory/", 12) + "file.txt";
+    String unsplittable = "tool/" + repeat("x", 150) + ".txt";
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    try (TarWriter tar = new TarWriter(archive)) {
+      tar.file(prefixed, 0644, 1, new ByteArrayInputStream(new byte[] {1}));
+      tar.file(unsplittable, 0644, 1, new ByteArrayInputStream(new byte[] {2}));
+    }
+
+    List<Entry> entries = parse(archive.toByteArray());
+    assertThat(entries.stream().map(e -> e.name).collect(toList()), contains(prefixed, unsplittable));
+    assertThat(entries.get(0).content, is(new byte[] {1}));
+    assertThat(entries.get(1).content, is(new byte[] {2}));
+  }
+
+  @Test
+  public void testIdenticalInputGivesIdenticalBytes() throws IOException {
+    byte[] content = randomBytes(5000);
+    byte[][] archives = new byte[2][];
+    for (int i = 0; i < archives.length; i++) {
+      ByteArrayOutputStream archive = new ByteArrayOutputStream();
+      try (TarWriter tar = new TarWriter(archive)) {
+        tar.directory("a/", 0755);
+        tar.file("a/b", 0644, content.length, new ByteArrayInputStream(content));
+      }
+      archives[i] = archive.toByteArray();
+    }
+
+    assertThat(archives[1], is(archives[0]));
+  }
+
+  static List<Entry> parse(byte[] archive) throws IOException {
+    InputStream in = new ByteArrayInputStream(archive);
+    List<Entry> entries = new ArrayList<>();
+    String paxPath = null;
+    byte[] header = new byte[512];
+    while (in.readNBytes(header, 0, 512) == 512) {
+      if (isZero(header)) {
+        break;
+      }
+      assertThat("checksum", checksum(header), is(octal(header, 148, 8)));
+      assertThat("magic", new String(header, 257, 6, StandardCharsets.US_ASCII), is("ustar\0"));
+      char type = (char) header[156];
+      int size = (int) octal(header, 124, 12);
+      byte[] content = in.readNBytes(size);
+      in.readNBytes((512 - size % 512) % 512);
+      if (type == 'x') {
+        String record = new String(content, StandardCharsets.UTF_8);
+        String body = record.substring(record.indexOf(' ') + 1);
+        assertThat("pax record length", Integer.parseInt(record.substring(0, record.indexOf(' '))), is(content.length));
+        assertThat(body.startsWith("path="), is(true));
+        paxPath = body.substring("path=".length(), body.length() - 1);
+      } else {
+        String name = string(header, 0, 100);
+        String prefix = string(header, 345, 155);
+        Entry entry = new Entry();
+        entry.name = paxPath != null ? paxPath : prefix.isEmpty() ? name : prefix + "/" + name;
+        entry.mode = (int) octal(header, 100, 8);
+        entry.mtime = octal(header, 136, 12);
+        entry.type = type;
+        entry.content = content;
+        entries.add(entry);
+        paxPath = null;
+      }
+    }
+    return entries;
+  }
+
+  private static boolean isZero(byte[] block) {
+    for (byte b : block) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long checksum(byte[] header) {
+    byte[] copy = Arrays.copyOf(header, header.length);
+    Arrays.fill(copy, 148, 156, (byte) ' ');
+    long sum = 0;
+    for (byte b : copy) {
+      sum += b & 0xff;
+    }
+    return sum;
+  }
+
+  private static long octal(byte[] header, int offset, int length) {
+    String value = string(header, offset, length).trim();
+    return value.isEmpty() ? 0 : Long.parseLong(value, 8);
+  }
+
+  private static String string(byte[] header, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && header[end] != 0) {
+      end++;
+    }
+    return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+  }
+
+  private static String repeat(String s, int count) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+
+  static final class Entry {
+    String name;
+    int mode;
+    long mtime;
+    char type;
+    byte[] content;
+  }
+}
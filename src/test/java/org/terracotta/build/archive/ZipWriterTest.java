@@ -0,0 +1,175 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static java.util.Collections.list;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ZipWriterTest {
+
+  @Test
+  public void testEntriesAreReadableByZipFile(@TempDir Path dir) throws IOException {
+    byte[] text = "hello world hello world hello world".getBytes(StandardCharsets.UTF_8);
+    byte[] binary = randomBytes(100_000);
+    Path archive = dir.resolve("test.zip");
+    try (ZipWriter writer = new ZipWriter(Files.newOutputStream(archive))) {
+      writer.directory("dir/", ZipWriter.DEFAULT_DIRECTORY_MODE);
+      writer.entry("dir/text.txt", ZipWriter.DEFLATED, ZipWriter.DEFAULT_FILE_MODE, text);
+      writer.entry("dir/binary.bin", ZipWriter.STORED, ZipWriter.DEFAULT_FILE_MODE, binary);
+      writer.entry("dir/run.sh", ZipWriter.DEFLATED, ZipWriter.DEFAULT_EXECUTABLE_MODE, text);
+    }
+
+    try (ZipFile zip = new ZipFile(archive.toFile())) {
+      assertThat(list(zip.entries()).stream().map(ZipEntry::getName).collect(toList()),
+          contains("dir/", "dir/text.txt", "dir/binary.bin", "dir/run.sh"));
+      assertThat(zip.getEntry("dir/").isDirectory(), is(true));
+      assertThat(zip.getEntry("dir/text.txt").getMethod(), is(ZipEntry.DEFLATED));
+      assertThat(zip.getEntry("dir/binary.bin").getMethod(), is(ZipEntry.STORED));
+      assertThat(read(zip.getInputStream(zip.getEntry("dir/text.txt"))), is(text));
+      assertThat(read(zip.getInputStream(zip.getEntry("dir/binary.bin"))), is(binary));
+    }
+
+    try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+      List<String> names = new ArrayList<>();
+      for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+        names.add(entry.getName());
+        if (entry.getName().equals("dir/binary.bin")) {
+          assertThat(read(zip), is(binary));
+        } else if (!entry.isDirectory()) {
+          assertThat(read(zip), is(text));
+        }
+      }
+      assertThat(names, contains("dir/", "dir/text.txt", "dir/binary.bin", "dir/run.sh"));
+    }
+
+    try (ZipReader reader = ZipReader.open(archive)) {
+      assertThat(reader.getEntry("dir/").getMode(), is(ZipWriter.DEFAULT_DIRECTORY_MODE));
+      assertThat(reader.getEntry("dir/text.txt").getMode(), is(ZipWriter.DEFAULT_FILE_MODE));
+      assertThat(reader.getEntry("dir/run.sh").getMode(), is(ZipWriter.DEFAULT_EXECUTABLE_MODE));
+    }
+  }
+
+  @Test
+  public void testReaderReadsJdkWrittenArchive(@TempDir Path dir) throws IOException {
+    byte[] text = "some text, some text, some text".getBytes(StandardCharsets.UTF_8);
+    Path archive = dir.resolve("jdk.zip");
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+      zip.putNextEntry(new ZipEntry("a/"));
+      zip.closeEntry();
+      zip.putNextEntry(new ZipEntry("a/text.txt"));
+      zip.write(text);
+      zip.closeEntry();
+    }
+
+    try (ZipReader reader = ZipReader.open(archive)) {
+      assertThat(reader.getEntries().stream().map(ZipReader.Entry::getName).collect(toList()), contains("a/", "a/text.txt"));
+      ZipReader.Entry entry = reader.getEntry("a/text.txt");
+      assertThat(entry.getSize(), is((long) text.length));
+      try (InputStream in = reader.getInputStream(entry)) {
+        assertThat(read(in), is(text));
+      }
+    }
+  }
+
+  @Test
+  public void testRawCopyPreservesEntries(@TempDir Path dir) throws IOException {
+    byte[] text = "copied without inflating, copied without inflating".getBytes(StandardCharsets.UTF_8);
+    Path source = dir.resolve("source.zip");
+    try (ZipWriter writer = new ZipWriter(Files.newOutputStream(source))) {
+      writer.directory("d/", ZipWriter.DEFAULT_DIRECTORY_MODE);
+      writer.entry("d/deflated.txt", ZipWriter.DEFLATED, ZipWriter.DEFAULT_FILE_MODE, text);
+      writer.entry("d/stored.txt", ZipWriter.STORED, ZipWriter.DEFAULT_EXECUTABLE_MODE, text);
+    }
+
+    Path copy = dir.resolve("copy.zip");
+    try (ZipReader reader = ZipReader.open(source); ZipWriter writer = new ZipWriter(Files.newOutputStream(copy))) {
+      for (ZipReader.Entry entry : reader.getEntries()) {
+        writer.copy(reader, entry);
+      }
+    }
+
+    assertThat(Files.readAllBytes(copy), is(Files.readAllBytes(source)));
+    try (ZipFile zip = new ZipFile(copy.toFile())) {
+      assertThat(read(zip.getInputStream(zip.getEntry("d/deflated.txt"))), is(text));
+      assertThat(read(zip.getInputStream(zip.getEntry("d/stored.txt"))), is(text));
+    }
+  }
+
+  @Test
+  public void testIdenticalInputGivesIdenticalBytes(@TempDir Path dir) throws IOException {
+    byte[] content = randomBytes(10_000);
+    for (String name : new String[] {"first.zip", "second.zip"}) {
+      try (ZipWriter writer = new ZipWriter(Files.newOutputStream(dir.resolve(name)))) {
+        writer.directory("x/", ZipWriter.DEFAULT_DIRECTORY_MODE);
+        writer.entry("x/content", ZipWriter.DEFLATED, ZipWriter.DEFAULT_FILE_MODE, content);
+      }
+    }
+
+    assertThat(Files.readAllBytes(dir.resolve("second.zip")), is(Files.readAllBytes(dir.resolve("first.zip"))));
+  }
+
+  @Test
+  public void testDuplicateEntriesAreRejected(@TempDir Path dir) throws IOException {
+    try (ZipWriter writer = new ZipWriter(Files.newOutputStream(dir.resolve("duplicate.zip")))) {
+      writer.entry("a", ZipWriter.STORED, ZipWriter.DEFAULT_FILE_MODE, new byte[1]);
+      assertThrows(IllegalArgumentException.class, () -> writer.entry("a", ZipWriter.STORED, ZipWriter.DEFAULT_FILE_MODE, new byte[1]));
+    }
+  }
+
+  static byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+    return bytes;
+  }
+
+  static byte[] read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    copy(in, out);
+    return out.toByteArray();
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, read);
+    }
+  }
+}
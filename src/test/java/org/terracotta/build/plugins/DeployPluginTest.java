@@ -0,0 +1,433 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins;
+
+import com.sun.net.httpserver.HttpServer;
+import org.gradle.api.Project;
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DeployPluginTest {
+
+  private static final List<String> ALGORITHMS = asList("MD5", "SHA-1", "SHA-256", "SHA-512");
+
+  @Test
+  public void testStagedPublicationToFileRepository(@TempDir Path projectDir) throws Exception {
+    writeProject(projectDir);
+
+    runner(projectDir, "publishStaged", "-Pversion=1.0.0").build();
+
+    Path module = projectDir.resolve("build/repo/org/example/demo");
+    Path version = module.resolve("1.0.0");
+    List<String> artifacts = asList("demo-1.0.0.jar", "demo-1.0.0-sources.jar", "demo-1.0.0-javadoc.jar", "demo-1.0.0.pom", "demo-1.0.0.module");
+    try (Stream<Path> files = Files.list(version)) {
+      assertThat(files.map(f -> f.getFileName().toString()).collect(toList()), containsInAnyOrder(
+          artifacts.stream().flatMap(a -> Stream.of(a, a + ".md5", a + ".sha1", a + ".sha256", a + ".sha512")).toArray()));
+    }
+    for (String artifact : artifacts) {
+      assertChecksums(version.resolve(artifact));
+    }
+
+    String metadata = new String(Files.readAllBytes(module.resolve("maven-metadata.xml")), StandardCharsets.UTF_8);
+    assertThat(metadata, containsString("<release>1.0.0</release>"));
+    assertChecksums(module.resolve("maven-metadata.xml"));
+  }
+
+  @Test
+  public void testStagedPublicationAppendsToMetadata(@TempDir Path projectDir) throws Exception {
+    writeProject(projectDir);
+
+    runner(projectDir, "publishStaged", "-Pversion=1.0.0").build();
+    runner(projectDir, "publishStaged", "-Pversion=1.0.1").build();
+
+    Path metadata = projectDir.resolve("build/repo/org/example/demo/maven-metadata.xml");
+    String content = new String(Files.readAllBytes(metadata), StandardCharsets.UTF_8);
+    assertThat(content, containsString("<version>1.0.0</version>"));
+    assertThat(content, containsString("<version>1.0.1</version>"));
+    assertThat(content, containsString("<release>1.0.1</release>"));
+    assertChecksums(metadata);
+  }
+
+  @Test
+  public void testStagedSnapshotPublication(@TempDir Path projectDir) throws Exception {
+    writeProject(projectDir);
+
+    runner(projectDir, "publishStaged", "-Pversion=1.0.0-SNAPSHOT").build();
+    runner(projectDir, "publishStaged", "-Pversion=1.0.0-SNAPSHOT").build();
+
+    Path module = projectDir.resolve("build/repo/org/example/demo");
+    Path version = module.resolve("1.0.0-SNAPSHOT");
+    List<String> build = snapshotBuild(version, 2);
+    assertThat(build, containsInAnyOrder(".jar", "-sources.jar", "-javadoc.jar", ".pom", ".module"));
+    assertThat(snapshotBuild(version, 1).size(), is(5));
+    try (Stream<Path> files = Files.list(version)) {
+      files.filter(f -> f.getFileName().toString().matches(".*-2\\.(jar|pom|module)")).forEach(f -> {
+        try {
+          assertChecksums(f);
+        } catch (Exception e) {
+          throw new AssertionError(e);
+        }
+      });
+    }
+
+    String versionMetadata = new String(Files.readAllBytes(version.resolve("maven-metadata.xml")), StandardCharsets.UTF_8);
+    assertThat(versionMetadata, containsString("<buildNumber>2</buildNumber>"));
+    assertThat(versionMetadata, containsString("<classifier>sources</classifier>"));
+    assertChecksums(version.resolve("maven-metadata.xml"));
+    String metadata = new String(Files.readAllBytes(module.resolve("maven-metadata.xml")), StandardCharsets.UTF_8);
+    assertThat(metadata, containsString("<latest>1.0.0-SNAPSHOT</latest>"));
+    assertThat(metadata, not(containsString("<release>")));
+
+    Path consumer = projectDir.resolve("consumer");
+    write(consumer.resolve("settings.gradle"), "rootProject.name = 'consumer'\n");
+    write(consumer.resolve("build.gradle"), String.join("\n",
+        "repositories {",
+        "  maven {",
+        "    url = uri('" + projectDir.resolve("build/repo").toUri() + "')",
+        "  }",
+        "}",
+        "configurations {",
+        "  snapshot",
+        "}",
+        "dependencies {",
+        "  snapshot 'org.example:demo:1.0.0-SNAPSHOT'",
+        "}",
+        "tasks.register('resolveSnapshot') {",
+        "  def files = configurations.snapshot",
+        "  doLast {",
+        "    files.each { println 'resolved ' + it.name }",
+        "  }",
+        "}",
+        ""));
+    BuildResult result = runner(consumer, "resolveSnapshot").build();
+    assertThat(result.getOutput(), Pattern.compile("resolved demo-1\\.0\\.0-(SNAPSHOT|\\d{8}\\.\\d{6}-2)\\.jar").matcher(result.getOutput()).find(), is(true));
+  }
+
+  @Test
+  public void testSkipUnchangedSkipsIdenticalSnapshots(@TempDir Path projectDir) throws Exception {
+    try (RepositoryServer server = new RepositoryServer()) {
+      writeProject(projectDir, server.getUrl(), true);
+
+      runner(projectDir, "publishStaged", "-Pversion=1.0.0-SNAPSHOT").build();
+      server.uploads().clear();
+
+      BuildResult unchanged = runner(projectDir, "publishStaged", "-Pversion=1.0.0-SNAPSHOT").build();
+
+      assertThat(server.uploads(), is(empty()));
+      assertThat(unchanged.getOutput(), containsString("Skipped 5 of 5 unchanged artifacts"));
+
+      write(projectDir.resolve("src/main/java/org/example/Other.java"), "package org.example;\n\n/** Other class. */\npublic class Other {\n}\n");
+      BuildResult changed = runner(projectDir, "publishStaged", "-Pversion=1.0.0-SNAPSHOT").build();
+
+      assertThat(changed.getOutput(), containsString("Skipped 0 of 5 unchanged artifacts"));
+      assertThat(server.uploads().stream().filter(path -> path.matches("org/example/demo/1\\.0\\.0-SNAPSHOT/demo-1\\.0\\.0-\\d{8}\\.\\d{6}-2[.-][^/]*"))
+          .filter(path -> path.endsWith(".jar") || path.endsWith(".pom") || path.endsWith(".module")).count(), is(5L));
+      assertThat(new String(server.content("org/example/demo/1.0.0-SNAPSHOT/maven-metadata.xml"), StandardCharsets.UTF_8), containsString("<buildNumber>2</buildNumber>"));
+    }
+  }
+
+  @Test
+  public void testStagedPublicationToHttpRepository(@TempDir Path projectDir) throws Exception {
+    try (RepositoryServer server = new RepositoryServer()) {
+      writeProject(projectDir, server.getUrl(), false);
+
+      runner(projectDir, "publishStaged", "-Pversion=1.0.0").build();
+
+      Path staged = projectDir.resolve("build/staging/mavenJava/org/example/demo/1.0.0/demo-1.0.0.jar");
+      assertThat(server.content("org/example/demo/1.0.0/demo-1.0.0.jar"), is(Files.readAllBytes(staged)));
+      assertThat(server.content("org/example/demo/1.0.0/demo-1.0.0.jar.sha256"), is(Files.readAllBytes(staged.resolveSibling("demo-1.0.0.jar.sha256"))));
+      assertThat(new String(server.content("org/example/demo/maven-metadata.xml"), StandardCharsets.UTF_8), containsString("<release>1.0.0</release>"));
+    }
+  }
+
+  @Test
+  public void testSkipUnchangedSkipsIdenticalArtifacts(@TempDir Path projectDir) throws Exception {
+    try (RepositoryServer server = new RepositoryServer()) {
+      writeProject(projectDir, server.getUrl(), true);
+
+      runner(projectDir, "publishStaged", "-Pversion=1.0.0").build();
+      int firstUploads = server.uploads().size();
+      server.uploads().clear();
+
+      BuildResult result = runner(projectDir, "publishStaged", "-Pversion=1.0.0").build();
+
+      assertThat(firstUploads, is(5 * 5 + 5));
+      assertThat(server.uploads(), is(empty()));
+      assertThat(result.getOutput(), containsString("Skipped 5 of 5 unchanged artifacts"));
+    }
+  }
+
+  @Test
+  public void testSkipUnchangedUploadsChangedArtifacts(@TempDir Path projectDir) throws Exception {
+    try (RepositoryServer server = new RepositoryServer()) {
+      writeProject(projectDir, server.getUrl(), true);
+
+      runner(projectDir, "publishStaged", "-Pversion=1.0.0").build();
+      server.uploads().clear();
+
+      write(projectDir.resolve("src/main/java/org/example/Other.java"), "package org.example;\n\n/** Other class. */\npublic class Other {\n}\n");
+      BuildResult result = runner(projectDir, "publishStaged", "-Pversion=1.0.0").build();
+
+      assertThat(server.uploads(), hasItem("org/example/demo/1.0.0/demo-1.0.0.jar"));
+      assertThat(server.uploads(), not(hasItem("org/example/demo/1.0.0/demo-1.0.0.pom")));
+      Path staged = projectDir.resolve("build/staging/mavenJava/org/example/demo/1.0.0/demo-1.0.0.jar");
+      assertThat(server.content("org/example/demo/1.0.0/demo-1.0.0.jar"), is(Files.readAllBytes(staged)));
+      assertThat(result.getOutput(), containsString("Skipped 1 of 5 unchanged artifacts"));
+      assertThat(result.getOutput(), containsString("(" + Files.size(staged.resolveSibling("demo-1.0.0.pom")) + " bytes not uploaded"));
+    }
+  }
+
+  @Test
+  public void testMavenPropertiesAreReproducible(@TempDir Path projectDir) throws Exception {
+    Project project = ProjectBuilder.builder().withProjectDir(projectDir.toFile()).build();
+    List<byte[]> outputs = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      Path destination = projectDir.resolve("pom-" + i + ".properties");
+      DeployPlugin.GenerateMavenProperties task = project.getTasks().register("generateMavenProperties" + i, DeployPlugin.GenerateMavenProperties.class, t -> {
+        t.getProjectIdentity().set(DefaultModuleVersionIdentifier.newId("org.example", "demo", "1.0.0"));
+        t.getDestination().set(destination.toFile());
+      }).get();
+      task.writeProperties();
+      outputs.add(Files.readAllBytes(destination));
+      Thread.sleep(1000);
+    }
+
+    assertThat(outputs.get(1), is(outputs.get(0)));
+    assertThat(new String(outputs.get(0), StandardCharsets.ISO_8859_1), is("artifactId=demo\ngroupId=org.example\nversion=1.0.0\n"));
+  }
+
+  @Test
+  public void testPomIsOnlyEmbeddedInPublishedJar(@TempDir Path projectDir) throws Exception {
+    writeProject(projectDir);
+
+    runner(projectDir, "assemble", "-Pversion=1.0.0").build();
+
+    try (ZipFile jar = new ZipFile(projectDir.resolve("build/libs/demo-1.0.0.jar").toFile())) {
+      assertThat(jar.getEntry("META-INF/maven/org.example/demo/pom.xml"), is(notNullValue()));
+      assertThat(jar.getEntry("META-INF/maven/org.example/demo/pom.properties"), is(notNullValue()));
+    }
+    try (ZipFile sources = new ZipFile(projectDir.resolve("build/libs/demo-1.0.0-sources.jar").toFile())) {
+      assertThat(sources.getEntry("META-INF/maven/org.example/demo/pom.xml"), is(nullValue()));
+      assertThat(sources.getEntry("META-INF/maven/org.example/demo/pom.properties"), is(nullValue()));
+    }
+  }
+
+  @Test
+  public void testPomIsNotEmbeddedInOtherJars(@TempDir Path projectDir) throws Exception {
+    writeProject(projectDir);
+    Files.write(projectDir.resolve("build.gradle"), String.join("\n",
+        "tasks.register('extraJar', Jar) {",
+        "  archiveClassifier = 'extra'",
+        "  from sourceSets.main.output",
+        "}",
+        "").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    runner(projectDir, "jar", "extraJar", "-Pversion=1.0.0").build();
+
+    try (ZipFile jar = new ZipFile(projectDir.resolve("build/libs/demo-1.0.0.jar").toFile())) {
+      assertThat(jar.getEntry("META-INF/maven/org.example/demo/pom.xml"), is(notNullValue()));
+    }
+    try (ZipFile extra = new ZipFile(projectDir.resolve("build/libs/demo-1.0.0-extra.jar").toFile())) {
+      assertThat(extra.getEntry("META-INF/maven/org.example/demo/pom.xml"), is(nullValue()));
+      assertThat(extra.getEntry("META-INF/maven/org.example/demo/pom.properties"), is(nullValue()));
+    }
+  }
+
+  @Test
+  public void testPomIsEmbeddedInPackageJar(@TempDir Path projectDir) throws Exception {
+    write(projectDir.resolve("settings.gradle"), "rootProject.name = 'demo'\n");
+    write(projectDir.resolve("build.gradle"), String.join("\n",
+        "plugins {",
+        "  id 'org.terracotta.build.package'",
+        "  id 'org.terracotta.build.deploy'",
+        "}",
+        "group = 'org.example'",
+        ""));
+
+    runner(projectDir, "assemble", "-Pversion=1.0.0").build();
+
+    try (ZipFile jar = new ZipFile(projectDir.resolve("build/libs/demo-1.0.0.jar").toFile())) {
+      assertThat(jar.getEntry("META-INF/maven/org.example/demo/pom.xml"), is(notNullValue()));
+      assertThat(jar.getEntry("META-INF/maven/org.example/demo/pom.properties"), is(notNullValue()));
+    }
+  }
+
+  /*
+   * Returns the suffixes (classifier and extension) of the artifacts published in the given snapshot build.
+   */
+  private static List<String> snapshotBuild(Path version, int buildNumber) throws IOException {
+    Pattern name = Pattern.compile("demo-1\\.0\\.0-\\d{8}\\.\\d{6}-" + buildNumber + "((?:-[^.]+)?\\.(?:jar|pom|module))");
+    try (Stream<Path> files = Files.list(version)) {
+      return files.map(f -> name.matcher(f.getFileName().toString())).filter(Matcher::matches).map(m -> m.group(1)).collect(toList());
+    }
+  }
+
+  private static GradleRunner runner(Path projectDir, String... arguments) {
+    return GradleRunner.create().withProjectDir(projectDir.toFile()).withPluginClasspath()
+        .withArguments(Stream.concat(Stream.of(arguments), Stream.of("--offline", "--stacktrace")).toArray(String[]::new));
+  }
+
+  private static void writeProject(Path projectDir) throws IOException {
+    writeProject(projectDir, null, false);
+  }
+
+  private static void writeProject(Path projectDir, String repositoryUrl, boolean skipUnchanged) throws IOException {
+    write(projectDir.resolve("settings.gradle"), "rootProject.name = 'demo'\n");
+    write(projectDir.resolve("build.gradle"), String.join("\n",
+        "plugins {",
+        "  id 'java-library'",
+        "  id 'org.terracotta.build.deploy'",
+        "}",
+        "group = 'org.example'",
+        "deploy {",
+        "  skipUnchanged = " + skipUnchanged,
+        "}",
+        "publishing {",
+        "  repositories {",
+        "    maven {",
+        "      name = 'local'",
+        repositoryUrl == null ? "      url = layout.buildDirectory.dir('repo')" : "      url = '" + repositoryUrl + "'",
+        repositoryUrl == null ? "" : "      allowInsecureProtocol = true",
+        "    }",
+        "  }",
+        "}",
+        ""));
+    write(projectDir.resolve("src/main/java/org/example/Demo.java"), String.join("\n",
+        "package org.example;",
+        "",
+        "/** Demo class. */",
+        "public class Demo {",
+        "}",
+        ""));
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void assertChecksums(Path file) throws Exception {
+    byte[] content = Files.readAllBytes(file);
+    for (String algorithm : ALGORITHMS) {
+      byte[] digest = MessageDigest.getInstance(algorithm).digest(content);
+      String expected = String.format("%0" + (digest.length * 2) + "x", new BigInteger(1, digest));
+      Path sidecar = file.resolveSibling(file.getFileName() + "." + algorithm.replace("-", "").toLowerCase());
+      assertThat(sidecar.toString(), new String(Files.readAllBytes(sidecar), StandardCharsets.US_ASCII), is(expected));
+    }
+  }
+
+  /**
+   * In-memory stand-in for a remote Maven repository, supporting {@code GET}, {@code HEAD} and {@code PUT}.
+   */
+  private static class RepositoryServer implements AutoCloseable {
+
+    private static final String CONTEXT = "/repo/";
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final List<String> uploads = new CopyOnWriteArrayList<>();
+    private final HttpServer server;
+
+    RepositoryServer() throws IOException {
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+      server.createContext(CONTEXT, exchange -> {
+        String path = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+        try {
+          switch (exchange.getRequestMethod()) {
+            case "PUT":
+              try (InputStream body = exchange.getRequestBody()) {
+                files.put(path, body.readAllBytes());
+              }
+              uploads.add(path);
+              exchange.sendResponseHeaders(201, -1);
+              break;
+            case "GET":
+            case "HEAD":
+              byte[] content = files.get(path);
+              if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+              } else if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+              } else {
+                exchange.sendResponseHeaders(200, content.length);
+                exchange.getResponseBody().write(content);
+              }
+              break;
+            default:
+              exchange.sendResponseHeaders(405, -1);
+          }
+        } finally {
+          exchange.close();
+        }
+      });
+      server.start();
+    }
+
+    String getUrl() {
+      return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + CONTEXT;
+    }
+
+    byte[] content(String path) {
+      return files.get(path);
+    }
+
+    List<String> uploads() {
+      return uploads;
+    }
+
+    @Override
+    public void close() {
+      server.stop(0);
+    }
+  }
+}
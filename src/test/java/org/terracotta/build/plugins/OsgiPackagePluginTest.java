@@ -0,0 +1,122 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.terracotta.build.plugins.PackagePluginTest.javaClass;
+import static org.terracotta.build.plugins.PackagePluginTest.write;
+
+public class OsgiPackagePluginTest {
+
+  @Test
+  public void testInstructionChangeOnlyRecalculatesManifest(@TempDir Path projectDir) throws Exception {
+    writeProject(projectDir, "");
+    Path bundle = projectDir.resolve("build/libs/demo-1.0.0.jar");
+
+    runner(projectDir, "assemble").build();
+    Attributes first = mainAttributes(bundle);
+    assertThat(first.getValue("Bundle-Description"), is("first"));
+    assertThat(first.getValue("Export-Package"), containsString("org.example.lib"));
+
+    BuildResult result = runner(projectDir, "assemble", "-Pdescription=second").build();
+
+    assertThat(result.tasks(TaskOutcome.SUCCESS).stream().map(BuildTask::getPath).collect(toList()), containsInAnyOrder(":osgiManifest", ":bundle"));
+    assertThat(result.task(":jar").getOutcome(), is(TaskOutcome.UP_TO_DATE));
+    Attributes second = mainAttributes(bundle);
+    assertThat(second.getValue("Bundle-Description"), is("second"));
+    assertThat(second.getValue("Export-Package"), is(first.getValue("Export-Package")));
+  }
+
+  @Test
+  public void testJarTaskRelocationsAreExported(@TempDir Path projectDir) throws Exception {
+    Path bundle = projectDir.resolve("build/libs/demo-1.0.0.jar");
+
+    writeProject(projectDir, "tasks.named('jar') {\n  relocate 'org.example.lib', 'org.example.shaded.lib'\n}");
+    runner(projectDir, "assemble").build();
+    String taskRelocated = mainAttributes(bundle).getValue("Export-Package");
+
+    assertThat(exportedPackages(taskRelocated), containsInAnyOrder("org.example.shaded.lib", "org.example.shaded.lib.impl"));
+    try (JarFile jar = new JarFile(bundle.toFile())) {
+      assertThat(jar.getEntry("org/example/shaded/lib/Alpha.class"), notNullValue());
+    }
+
+    writeProject(projectDir, "packaging {\n  relocate('org.example.lib', 'org.example.shaded.lib')\n}");
+    runner(projectDir, "assemble").build();
+    assertThat(mainAttributes(bundle).getValue("Export-Package"), is(taskRelocated));
+  }
+
+  /*
+   * bnd runs from the plugin's own classpath, so these builds declare no repositories and run offline.
+   */
+  private static GradleRunner runner(Path projectDir, String... arguments) {
+    return GradleRunner.create().withProjectDir(projectDir.toFile()).withPluginClasspath()
+        .withArguments(Stream.concat(Stream.of(arguments), Stream.of("--offline", "--stacktrace")).toArray(String[]::new));
+  }
+
+  private static void writeProject(Path projectDir, String extra) throws IOException {
+    write(projectDir.resolve("settings.gradle"), "rootProject.name = 'demo'\ninclude 'lib'\n");
+    write(projectDir.resolve("build.gradle"), String.join("\n",
+        "plugins {",
+        "  id 'org.terracotta.build.osgi-package'",
+        "}",
+        "org.terracotta.build.plugins.PackagePlugin.augmentAttributeSchema(project)",
+        "version = '1.0.0'",
+        "dependencies {",
+        "  contents project(':lib')",
+        "}",
+        "tasks.named('jar') {",
+        "  osgi {",
+        "    instruction 'Bundle-Description', providers.gradleProperty('description').orElse('first')",
+        "  }",
+        "}",
+        extra,
+        ""));
+    write(projectDir.resolve("lib/build.gradle"), "plugins {\n  id 'java-library'\n}\n");
+    write(projectDir.resolve("lib/src/main/java/org/example/lib/Alpha.java"), javaClass("org.example.lib", "Alpha", ""));
+    write(projectDir.resolve("lib/src/main/java/org/example/lib/impl/Beta.java"), javaClass("org.example.lib.impl", "Beta", ""));
+  }
+
+  private static List<String> exportedPackages(String exportPackage) {
+    return Stream.of(exportPackage.replaceAll("\"[^\"]*\"", "").split(",")).map(export -> export.split(";")[0].trim()).collect(toList());
+  }
+
+  private static Attributes mainAttributes(Path jar) throws IOException {
+    try (JarFile file = new JarFile(jar.toFile())) {
+      return file.getManifest().getMainAttributes();
+    }
+  }
+}
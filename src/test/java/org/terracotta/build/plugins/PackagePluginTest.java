@@ -0,0 +1,338 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static java.util.Collections.list;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class PackagePluginTest {
+
+  @Test
+  public void testIncrementalPackagingMatchesCleanBuild(@TempDir Path projectDir) throws Exception {
+    writeProject(projectDir, "incrementalPackaging = true");
+    Path jar = projectDir.resolve("build/libs/demo.jar");
+
+    runner(projectDir, "jar").build();
+
+    write(projectDir.resolve("lib/src/main/java/org/example/lib/Alpha.java"), javaClass("org.example.lib", "Alpha", "public int changed() { return 1; }"));
+    write(projectDir.resolve("lib/src/main/java/org/example/lib/Gamma.java"), javaClass("org.example.lib", "Gamma", ""));
+    Files.delete(projectDir.resolve("lib/src/main/java/org/example/lib/Beta.java"));
+    write(projectDir.resolve("lib/src/main/resources/org/example/lib/alpha.txt"), "changed alpha");
+    write(projectDir.resolve("lib/src/main/resources/org/example/lib/gamma.txt"), "gamma");
+    Files.delete(projectDir.resolve("lib/src/main/resources/org/example/lib/beta.txt"));
+
+    BuildResult incremental = runner(projectDir, "jar", "--info").build();
+    assertThat(incremental.getOutput(), containsString("Packaged demo.jar incrementally"));
+    assertThat(incremental.getOutput(), not(containsString("incrementally: 0 entries reused")));
+    Map<String, String> incrementalEntries = entries(jar);
+    byte[] incrementalBytes = Files.readAllBytes(jar);
+
+    assertThat(incrementalEntries, hasKey("org/example/lib/Gamma.class"));
+    assertThat(incrementalEntries, not(hasKey("org/example/lib/Beta.class")));
+    assertThat(incrementalEntries, not(hasKey("org/example/lib/beta.txt")));
+    assertThat(decode(incrementalEntries.get("org/example/lib/alpha.txt")), is("changed alpha"));
+
+    runner(projectDir, "clean", "jar").build();
+    assertThat(Files.readAllBytes(jar), is(incrementalBytes));
+
+    runner(projectDir, "clean", "jar", "-Pincremental=false").build();
+    assertThat(entries(jar), is(incrementalEntries));
+  }
+
+  @Test
+  public void testRelocatorsForceFullPackaging(@TempDir Path projectDir) throws Exception {
+    writeProject(projectDir, "incrementalPackaging = true");
+    Path jar = projectDir.resolve("build/libs/demo.jar");
+
+    runner(projectDir, "jar").build();
+    assertThat(entries(jar), hasKey("org/example/other/Other.class"));
+
+    writeProject(projectDir, "incrementalPackaging = true\n  relocate('org.example.other', 'org.example.shaded.other')");
+    BuildResult result = runner(projectDir, "jar", "--info").build();
+
+    assertThat(result.getOutput(), containsString("Packaging jar in full: relocators are configured on the task"));
+    Map<String, String> entries = entries(jar);
+    assertThat(entries, hasKey("org/example/shaded/other/Other.class"));
+    assertThat(entries, not(hasKey("org/example/other/Other.class")));
+  }
+
+  @Test
+  public void testMergeArchivesFirstArchiveWins(@TempDir Path projectDir) throws Exception {
+    writeArchive(projectDir.resolve("first.jar"), "a.txt", "first");
+    writeArchive(projectDir.resolve("second.jar"), "a.txt", "second", "b.txt", "second");
+    write(projectDir.resolve("settings.gradle"), "rootProject.name = 'merge'\n");
+    write(projectDir.resolve("build.gradle"), String.join("\n",
+        "plugins {",
+        "  id 'org.terracotta.build.package'",
+        "}",
+        "tasks.register('merge', org.terracotta.build.plugins.PackagePlugin.MergeArchives) {",
+        "  def order = ['first.jar', 'second.jar']",
+        "  archives.from(providers.gradleProperty('reversed').isPresent() ? order.reverse() : order)",
+        "  duplicatesStrategy = providers.gradleProperty('duplicates').getOrElse('INCLUDE')",
+        "  archiveFileName = 'merged.jar'",
+        "  destinationDirectory = layout.buildDirectory.dir('merged')",
+        "}",
+        ""));
+    Path merged = projectDir.resolve("build/merged/merged.jar");
+
+    runner(projectDir, "merge").build();
+    Map<String, String> entries = entries(merged);
+    assertThat(decode(entries.get("a.txt")), is("first"));
+    assertThat(decode(entries.get("b.txt")), is("second"));
+
+    BuildResult reversed = runner(projectDir, "merge", "-Preversed").build();
+    assertThat(reversed.task(":merge").getOutcome(), is(TaskOutcome.SUCCESS));
+    assertThat(decode(entries(merged).get("a.txt")), is("second"));
+
+    BuildResult failed = runner(projectDir, "merge", "-Pduplicates=FAIL").buildAndFail();
+    assertThat(failed.getOutput(), containsString("Encountered duplicate path \"a.txt\""));
+  }
+
+  @Test
+  public void testPackageBudgetsAreEnforcedByCheck(@TempDir Path projectDir) throws Exception {
+    writeProject(projectDir, "");
+
+    BuildResult unbudgeted = runner(projectDir, "check").build();
+    assertThat(unbudgeted.task(":packageReport"), is(nullValue()));
+
+    writeProject(projectDir, "classCountBudget = 3\n  sizeBudget = 1000000L");
+    BuildResult withinBudget = runner(projectDir, "check").build();
+    assertThat(withinBudget.task(":packageReport").getOutcome(), is(TaskOutcome.SUCCESS));
+    String report = new String(Files.readAllBytes(projectDir.resolve("build/reports/package/package.txt")), StandardCharsets.UTF_8);
+    assertThat(report, containsString("files, 3 classes"));
+
+    writeProject(projectDir, "classCountBudget = 2");
+    BuildResult overBudget = runner(projectDir, "check").buildAndFail();
+    assertThat(overBudget.getOutput(), containsString("Package jar demo.jar is over budget: 3 classes exceeds the budget of 2 classes"));
+
+    writeProject(projectDir, "sizeBudget = 100L");
+    BuildResult overSize = runner(projectDir, "check").buildAndFail();
+    assertThat(overSize.getOutput(), containsString("exceeds the budget of 100 bytes"));
+  }
+
+  @Test
+  public void testClassLoadOrderOnlyReordersEntries(@TempDir Path projectDir) throws Exception {
+    String relocation = "relocate('org.example.other', 'org.example.shaded.other')";
+    writeProject(projectDir, relocation);
+    Path jar = projectDir.resolve("build/libs/demo.jar");
+
+    runner(projectDir, "jar").build();
+    Map<String, String> unordered = entries(jar);
+
+    write(projectDir.resolve("class-load.log"), String.join("\n",
+        "[0.041s][info][class,load] org.example.other.Other source: file:/other.jar",
+        "[0.042s][info][class,load] org.example.lib.Beta source: file:/lib.jar",
+        "[0.043s][info][class,load] org.example.lib.Alpha source: file:/lib.jar",
+        ""));
+    writeProject(projectDir, relocation + "\n  classLoadOrder = layout.projectDirectory.file('class-load.log')");
+    BuildResult ordered = runner(projectDir, "jar", "--info").build();
+
+    assertThat(ordered.getOutput(), containsString("Laid out demo.jar in class load order: 3 of 3 traced classes present"));
+    assertThat(entries(jar), is(unordered));
+    try (ZipFile zip = new ZipFile(jar.toFile())) {
+      List<String> files = list(zip.entries()).stream().filter(e -> !e.isDirectory()).map(ZipEntry::getName).collect(toList());
+      assertThat(files.subList(0, 4), contains("META-INF/MANIFEST.MF",
+          "org/example/shaded/other/Other.class", "org/example/lib/Beta.class", "org/example/lib/Alpha.class"));
+    }
+  }
+
+  @Test
+  public void testVersionedContentsMakeMultiReleaseJar(@TempDir Path projectDir) throws Exception {
+    writeProject(projectDir, "withRelease(11)\n  relocate('org.example.other', 'org.example.shaded.other')");
+    write(projectDir.resolve("settings.gradle"), "rootProject.name = 'demo'\ninclude 'lib', 'other', 'lib11'\n");
+    Files.write(projectDir.resolve("build.gradle"), "dependencies {\n  java11Contents project(':lib11')\n}\n"
+        .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    write(projectDir.resolve("lib11/build.gradle"), String.join("\n",
+        "plugins {",
+        "  id 'java-library'",
+        "}",
+        "java {",
+        "  sourceCompatibility = JavaVersion.VERSION_11",
+        "  targetCompatibility = JavaVersion.VERSION_11",
+        "}",
+        "dependencies {",
+        "  implementation project(':other')",
+        "}",
+        ""));
+    write(projectDir.resolve("lib11/src/main/java/org/example/lib/Alpha.java"), javaClass("org.example.lib", "Alpha",
+        "public Object other() { return new org.example.other.Other(); }"));
+    write(projectDir.resolve("lib11/src/main/resources/org/example/lib/alpha.txt"), "alpha 11");
+    write(projectDir.resolve("lib11/src/main/resources/META-INF/services/org.example.Service"), "org.example.lib.Alpha\n");
+
+    runner(projectDir, "jar").build();
+
+    Path jar = projectDir.resolve("build/libs/demo.jar");
+    Map<String, String> entries = entries(jar);
+    assertThat(entries, hasKey("org/example/lib/Alpha.class"));
+    assertThat(decode(entries.get("org/example/lib/alpha.txt")), is("alpha"));
+    assertThat(decode(entries.get("META-INF/versions/11/org/example/lib/alpha.txt")), is("alpha 11"));
+    assertThat(entries.keySet().stream().filter(name -> name.startsWith("META-INF/versions/11/META-INF/")).collect(toList()), is(Collections.emptyList()));
+    assertThat(entries, not(hasKey("META-INF/services/org.example.Service")));
+
+    String versionedAlpha = new String(Base64.getDecoder().decode(entries.get("META-INF/versions/11/org/example/lib/Alpha.class")), StandardCharsets.ISO_8859_1);
+    assertThat(versionedAlpha, containsString("org/example/shaded/other/Other"));
+    assertThat(versionedAlpha, not(containsString("org/example/other/Other")));
+
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      assertThat(jarFile.getManifest().getMainAttributes().getValue("Multi-Release"), is("true"));
+    }
+  }
+
+  @Test
+  public void testDevelopmentModeSkipsDocumentationAndStoresEntries(@TempDir Path projectDir) throws Exception {
+    writeProject(projectDir, "withSourcesJar()\n  withJavadocJar()");
+    /*
+     * Realize the package jar task before development mode is set: the mode must be read lazily.
+     */
+    Files.write(projectDir.resolve("build.gradle"), String.join("\n",
+        "tasks.named('jar').get()",
+        "if (providers.gradleProperty('dev').isPresent()) {",
+        "  packaging.developmentMode = true",
+        "}",
+        "").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    Path jar = projectDir.resolve("build/libs/demo.jar");
+
+    BuildResult development = runner(projectDir, "jar", "sourcesJar", "javadocJar", "-Pdev").build();
+    assertThat(development.task(":sourcesJar").getOutcome(), is(TaskOutcome.SKIPPED));
+    assertThat(development.task(":javadocJar").getOutcome(), is(TaskOutcome.SKIPPED));
+    assertThat(compressionMethods(jar), is(Collections.singleton(ZipEntry.STORED)));
+
+    BuildResult release = runner(projectDir, "jar").build();
+    assertThat(release.task(":jar").getOutcome(), is(TaskOutcome.SUCCESS));
+    assertThat(compressionMethods(jar), hasItem(ZipEntry.DEFLATED));
+  }
+
+  private static Set<Integer> compressionMethods(Path archive) throws IOException {
+    try (ZipFile zip = new ZipFile(archive.toFile())) {
+      return list(zip.entries()).stream().filter(e -> !e.isDirectory() && e.getSize() > 0).map(ZipEntry::getMethod).collect(toSet());
+    }
+  }
+
+  static GradleRunner runner(Path projectDir, String... arguments) {
+    return GradleRunner.create().withProjectDir(projectDir.toFile()).withPluginClasspath()
+        .withArguments(Stream.concat(Stream.of(arguments), Stream.of("--offline", "--stacktrace")).toArray(String[]::new));
+  }
+
+  /**
+   * Writes a project packaging two library subprojects: {@code lib} (classes and resources) and {@code other}.
+   */
+  static void writeProject(Path projectDir, String packaging) throws IOException {
+    write(projectDir.resolve("settings.gradle"), "rootProject.name = 'demo'\ninclude 'lib', 'other'\n");
+    write(projectDir.resolve("build.gradle"), String.join("\n",
+        "plugins {",
+        "  id 'org.terracotta.build.package'",
+        "}",
+        "org.terracotta.build.plugins.PackagePlugin.augmentAttributeSchema(project)",
+        "packaging {",
+        "  " + packaging,
+        "}",
+        "if (providers.gradleProperty('incremental').isPresent()) {",
+        "  packaging.incrementalPackaging = providers.gradleProperty('incremental').map { Boolean.parseBoolean(it) }",
+        "}",
+        "dependencies {",
+        "  contents project(':lib')",
+        "  contents project(':other')",
+        "}",
+        ""));
+    for (String library : new String[] {"lib", "other"}) {
+      write(projectDir.resolve(library).resolve("build.gradle"), "plugins {\n  id 'java-library'\n}\n");
+    }
+    Path lib = projectDir.resolve("lib/src/main");
+    if (!Files.exists(lib)) {
+      write(lib.resolve("java/org/example/lib/Alpha.java"), javaClass("org.example.lib", "Alpha", ""));
+      write(lib.resolve("java/org/example/lib/Beta.java"), javaClass("org.example.lib", "Beta", ""));
+      write(lib.resolve("resources/org/example/lib/alpha.txt"), "alpha");
+      write(lib.resolve("resources/org/example/lib/beta.txt"), "beta");
+      write(projectDir.resolve("other/src/main/java/org/example/other/Other.java"), javaClass("org.example.other", "Other", ""));
+    }
+  }
+
+  static void writeArchive(Path archive, String... namesAndContents) throws IOException {
+    Files.createDirectories(archive.getParent());
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+      for (int i = 0; i < namesAndContents.length; i += 2) {
+        zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+        zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+      }
+    }
+  }
+
+  static String decode(String content) {
+    return new String(Base64.getDecoder().decode(content), StandardCharsets.UTF_8);
+  }
+
+  static String javaClass(String packageName, String name, String body) {
+    return "package " + packageName + ";\n\npublic class " + name + " {\n  " + body + "\n}\n";
+  }
+
+  static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the file entries of an archive, mapped to their (Base64 encoded) content.
+   */
+  static Map<String, String> entries(Path archive) throws IOException {
+    Map<String, String> entries = new TreeMap<>();
+    try (ZipFile zip = new ZipFile(archive.toFile())) {
+      for (ZipEntry entry : list(zip.entries())) {
+        if (!entry.isDirectory()) {
+          try (InputStream in = zip.getInputStream(entry)) {
+            entries.put(entry.getName(), Base64.getEncoder().encodeToString(in.readAllBytes()));
+          }
+        }
+      }
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.terracotta.build.ClassLoadTrace;
+import org.terracotta.build.archive.ZipWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static java.util.Collections.list;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.terracotta.build.plugins.PackagePluginTest.javaClass;
+import static org.terracotta.build.plugins.PackagePluginTest.runner;
+import static org.terracotta.build.plugins.PackagePluginTest.write;
+import static org.terracotta.build.plugins.PackagePluginTest.writeArchive;
+
+public class ToolPluginTest {
+
+  @Test
+  public void testIncrementalAssemblyCopiesByDefault(@TempDir Path projectDir) throws IOException {
+    writeProject(projectDir, "assemblyMode = 'INCREMENTAL'");
+    Path dependency = projectDir.resolve("libs/dependency.jar");
+    Path toolDependency = projectDir.resolve("build/tool/lib/dependency.jar");
+
+    runner(projectDir, "assembleTool").build();
+
+    assertThat(Files.isRegularFile(projectDir.resolve("build/tool/lib/demo.jar")), is(true));
+    assertThat(Files.isRegularFile(toolDependency), is(true));
+    assertThat(Files.isRegularFile(projectDir.resolve("build/tool/bin/demo.sh")), is(true));
+    assertThat(Files.isSameFile(dependency, toolDependency), is(false));
+    BasicFileAttributes before = Files.readAttributes(toolDependency, BasicFileAttributes.class);
+
+    write(projectDir.resolve("src/main/java/org/example/tool/Main.java"), javaClass("org.example.tool", "Main",
+        "public static void main(String[] args) { System.exit(1); }"));
+    BuildResult rebuild = runner(projectDir, "assembleTool", "--info").build();
+
+    assertThat(rebuild.getOutput(), containsString("1 copied, 1 unchanged, 0 deleted"));
+    BasicFileAttributes after = Files.readAttributes(toolDependency, BasicFileAttributes.class);
+    assertThat(after.fileKey(), is(before.fileKey()));
+    assertThat(after.lastModifiedTime(), is(before.lastModifiedTime()));
+
+    runner(projectDir, "assembleTool", "-PwithoutDependency").build();
+
+    assertThat(Files.exists(toolDependency), is(false));
+    assertThat(Files.isRegularFile(projectDir.resolve("build/tool/lib/demo.jar")), is(true));
+    assertThat(Files.isRegularFile(projectDir.resolve("build/tool/bin/demo.sh")), is(true));
+  }
+
+  @Test
+  public void testIncrementalAssemblyCanHardLink(@TempDir Path projectDir) throws IOException {
+    writeProject(projectDir, "assemblyMode = 'INCREMENTAL'\n  hardLinkLibraries = true");
+
+    runner(projectDir, "assembleTool").build();
+
+    assertThat(Files.isSameFile(projectDir.resolve("libs/dependency.jar"), projectDir.resolve("build/tool/lib/dependency.jar")), is(true));
+  }
+
+  @Test
+  public void testCopyAssembly(@TempDir Path projectDir) throws IOException {
+    writeProject(projectDir, "");
+
+    runner(projectDir, "assembleTool").build();
+
+    assertThat(Files.isRegularFile(projectDir.resolve("build/tool/lib/demo.jar")), is(true));
+    assertThat(Files.isRegularFile(projectDir.resolve("build/tool/lib/dependency.jar")), is(true));
+  }
+
+  @Test
+  public void testConsolidatedJarIsOrderedAndMerged(@TempDir Path projectDir) throws IOException {
+    writeProject(projectDir, "consolidateClasspath = true\n  classLoadOrder = layout.projectDirectory.file('class-load.log')");
+    write(projectDir.resolve("src/main/resources/META-INF/services/org.example.Service"), "org.example.tool.Provider\n");
+    writeArchive(projectDir.resolve("libs/dependency.jar"),
+        "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\nMulti-Release: true\n\n",
+        "META-INF/DEPENDENCY.SF", "signature",
+        "META-INF/services/org.example.Service", "# comment\norg.example.dependency.Provider\norg.example.tool.Provider\n",
+        "org/example/tool/Main.class", "shadowed",
+        "org/example/dependency/Dependency.class", "dependency");
+    write(projectDir.resolve("class-load.log"), String.join("\n",
+        "[Loaded org.example.dependency.Dependency from file:/lib/dependency.jar]",
+        "[Loaded org.example.tool.Main from file:/lib/demo.jar]",
+        ""));
+
+    runner(projectDir, "assembleTool").build();
+
+    Path jar = projectDir.resolve("build/tool/lib/demo.jar");
+    assertThat(Files.exists(projectDir.resolve("build/tool/lib/dependency.jar")), is(false));
+    try (ZipFile zip = new ZipFile(jar.toFile())) {
+      List<String> names = list(zip.entries()).stream().map(ZipEntry::getName).collect(toList());
+      assertThat(names.subList(0, 4), contains("META-INF/", "META-INF/MANIFEST.MF",
+          "org/example/dependency/Dependency.class", "org/example/tool/Main.class"));
+      assertThat(names, not(hasItem("META-INF/DEPENDENCY.SF")));
+      assertThat(new HashSet<>(names).size(), is(names.size()));
+      assertThat(list(zip.entries()).stream().map(ZipEntry::getTimeLocal).collect(toSet()),
+          is(Collections.singleton(ZipWriter.CONSTANT_TIME)));
+
+      Manifest manifest = new Manifest(zip.getInputStream(zip.getEntry("META-INF/MANIFEST.MF")));
+      assertThat(manifest.getMainAttributes().getValue("Main-Class"), is("org.example.tool.Main"));
+      assertThat(manifest.getMainAttributes().getValue("Class-Path"), is(nullValue()));
+      assertThat(manifest.getMainAttributes().getValue("Multi-Release"), is("true"));
+
+      assertThat(read(zip, "org/example/tool/Main.class"), not("shadowed"));
+      assertThat(read(zip, "META-INF/services/org.example.Service"), is("org.example.tool.Provider\norg.example.dependency.Provider\n"));
+    }
+  }
+
+  @Test
+  public void testRecordedClassLoadOrder(@TempDir Path projectDir) throws IOException {
+    writeProject(projectDir, "trainingArguments = ['train']");
+    write(projectDir.resolve("src/main/java/org/example/tool/Main.java"), javaClass("org.example.tool", "Main",
+        "public static void main(String[] args) { System.out.println(\"training \" + String.join(\",\", args)); }"));
+
+    runner(projectDir, "recordToolClassLoadOrder").build();
+
+    Path log = projectDir.resolve("build/tool-training/class-load.log");
+    assertThat(ClassLoadTrace.parse(log).getClasses(), hasItem("org.example.tool.Main"));
+    assertThat(new String(Files.readAllBytes(log), StandardCharsets.UTF_8), containsString("training train" + System.lineSeparator()));
+
+    BuildResult rerun = runner(projectDir, "recordToolClassLoadOrder").build();
+    assertThat(rerun.task(":recordToolClassLoadOrder").getOutcome(), is(TaskOutcome.UP_TO_DATE));
+  }
+
+  @Test
+  public void testStartupProfileOptionsAreMergedIntoScripts(@TempDir Path projectDir) throws IOException {
+    Path unixScript = projectDir.resolve("build/toolScripts/demo.sh");
+    Path windowsScript = projectDir.resolve("build/toolScripts/demo.bat");
+
+    writeProject(projectDir, "startupProfile = 'service'\n  javaOptions = ['-Dtool=true']");
+    runner(projectDir, "generateToolScripts").build();
+
+    assertThat(read(unixScript), containsString(" -XX:InitialRAMPercentage=25.0 -XX:MaxRAMPercentage=75.0 -XX:+UseG1GC -XX:+ExitOnOutOfMemoryError -Dtool=true "));
+    assertThat(read(windowsScript), containsString(" \"-XX:InitialRAMPercentage=25.0\" \"-XX:MaxRAMPercentage=75.0\" \"-XX:+UseG1GC\" \"-XX:+ExitOnOutOfMemoryError\" -Dtool=true "));
+
+    writeProject(projectDir, "startupProfile = 'cli'\n  startupProfiles {\n    cli {\n      javaOptions = ['-Xss512k']\n    }\n  }\n  javaOptions = ['-Dtool=true']");
+    BuildResult overridden = runner(projectDir, "generateToolScripts").build();
+
+    assertThat(overridden.task(":generateToolScripts").getOutcome(), is(TaskOutcome.SUCCESS));
+    assertThat(read(unixScript), containsString(" -Xss512k -Dtool=true "));
+    assertThat(read(unixScript), not(containsString("-XX:")));
+
+    writeProject(projectDir, "javaOptions = ['-Dtool=true']");
+    runner(projectDir, "generateToolScripts").build();
+
+    assertThat(read(unixScript), containsString(" -Dtool=true "));
+    assertThat(read(unixScript), not(containsString("-XX:")));
+    assertThat(read(windowsScript), not(containsString("-XX:")));
+  }
+
+  @Test
+  public void testGeneratedTemplateIsBuiltFirst(@TempDir Path projectDir) throws IOException {
+    writeProject(projectDir, String.join("\n  ",
+        "unixTemplate = resources.text.fromFile(tasks.register('generateUnixTemplate') {",
+        "  def template = layout.buildDirectory.file('unix.template')",
+        "  outputs.file(template)",
+        "  doLast { template.get().asFile.text = 'generated unix template' }",
+        "})"));
+    BuildResult result = runner(projectDir, "generateToolScripts").build();
+
+    assertThat(result.task(":generateUnixTemplate").getOutcome(), is(TaskOutcome.SUCCESS));
+    assertThat(read(projectDir.resolve("build/toolScripts/demo.sh")), is("generated unix template"));
+  }
+
+  private static String read(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  private static String read(ZipFile zip, String name) throws IOException {
+    try (InputStream input = zip.getInputStream(zip.getEntry(name))) {
+      return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Writes a tool project with a single (local) jar dependency, dropped when {@code -PwithoutDependency} is set.
+   */
+  static void writeProject(Path projectDir, String tool) throws IOException {
+    write(projectDir.resolve("settings.gradle"), "rootProject.name = 'demo'\n");
+    write(projectDir.resolve("build.gradle"), String.join("\n",
+        "plugins {",
+        "  id 'java'",
+        "  id 'org.terracotta.build.tool'",
+        "}",
+        "tool {",
+        "  name = 'demo'",
+        "  mainClass = 'org.example.tool.Main'",
+        "  " + tool,
+        "}",
+        "dependencies {",
+        "  if (!providers.gradleProperty('withoutDependency').isPresent()) {",
+        "    implementation files('libs/dependency.jar')",
+        "  }",
+        "}",
+        ""));
+    Path main = projectDir.resolve("src/main/java/org/example/tool/Main.java");
+    if (!Files.exists(main)) {
+      write(main, javaClass("org.example.tool", "Main", "public static void main(String[] args) {}"));
+      writeArchive(projectDir.resolve("libs/dependency.jar"), "org/example/dependency/dependency.txt", "dependency");
+    }
+  }
+}
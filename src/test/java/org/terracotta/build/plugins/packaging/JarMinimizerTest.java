@@ -0,0 +1,132 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins.packaging;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static java.util.Collections.list;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.not;
+import static org.objectweb.asm.Opcodes.ACC_ABSTRACT;
+import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V1_8;
+
+public class JarMinimizerTest {
+
+  @Test
+  public void testUnreachableClassesAreRemoved(@TempDir Path dir) throws IOException {
+    Path minimized = dir.resolve("minimized.jar");
+    JarMinimizer.Result result = new JarMinimizer(Collections.singleton("app.Main"), Collections.singleton("lib.kept.*"))
+        .minimize(createJar(dir.resolve("input.jar")), minimized);
+
+    assertThat(result.getRemovedClasses().keySet(), contains("lib.Unused"));
+    try (ZipFile zip = new ZipFile(minimized.toFile())) {
+      List<String> entries = list(zip.entries()).stream().map(ZipEntry::getName).collect(toList());
+      assertThat(entries, hasItems("app/Main.class", "lib/Used.class", "lib/kept/Kept.class", "api/Service.class",
+          "lib/ServiceImpl.class", "META-INF/services/api.Service", "lib/resource.txt"));
+      assertThat(entries, not(hasItem("lib/Unused.class")));
+    }
+  }
+
+  @Test
+  public void testServiceLoaderWorksAfterMinimization(@TempDir Path dir) throws Exception {
+    Path minimized = dir.resolve("minimized.jar");
+    new JarMinimizer(Collections.singleton("app.Main"), Collections.emptySet()).minimize(createJar(dir.resolve("input.jar")), minimized);
+
+    try (URLClassLoader loader = new URLClassLoader(new URL[] {minimized.toUri().toURL()}, null)) {
+      Class<?> service = Class.forName("api.Service", false, loader);
+      List<String> providers = new ArrayList<>();
+      for (Object provider : ServiceLoader.load(service, loader)) {
+        providers.add(provider.getClass().getName());
+      }
+      assertThat(providers, containsInAnyOrder("lib.ServiceImpl"));
+    }
+  }
+
+  private static Path createJar(Path jar) throws IOException {
+    try (OutputStream out = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(out)) {
+      write(zip, "app/Main.class", createClass("app/Main", "java/lang/Object", null, "lib/Used"));
+      write(zip, "lib/Used.class", createClass("lib/Used", "java/lang/Object", null, null));
+      write(zip, "lib/Unused.class", createClass("lib/Unused", "java/lang/Object", null, "lib/Used"));
+      write(zip, "lib/kept/Kept.class", createClass("lib/kept/Kept", "java/lang/Object", null, null));
+      write(zip, "api/Service.class", createInterface("api/Service"));
+      write(zip, "lib/ServiceImpl.class", createClass("lib/ServiceImpl", "java/lang/Object", "api/Service", null));
+      write(zip, "META-INF/services/api.Service", "# providers\nlib.ServiceImpl\n".getBytes(StandardCharsets.UTF_8));
+      write(zip, "lib/resource.txt", "resource".getBytes(StandardCharsets.UTF_8));
+    }
+    return jar;
+  }
+
+  private static void write(ZipOutputStream zip, String name, byte[] data) throws IOException {
+    zip.putNextEntry(new ZipEntry(name));
+    zip.write(data);
+    zip.closeEntry();
+  }
+
+  private static byte[] createClass(String name, String superName, String iface, String calls) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(V1_8, ACC_PUBLIC, name, null, superName, iface == null ? null : new String[] {iface});
+    MethodVisitor constructor = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+    constructor.visitCode();
+    constructor.visitVarInsn(ALOAD, 0);
+    constructor.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+    if (calls != null) {
+      constructor.visitMethodInsn(INVOKESTATIC, calls, "call", "()V", false);
+    }
+    constructor.visitInsn(RETURN);
+    constructor.visitMaxs(0, 0);
+    constructor.visitEnd();
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private static byte[] createInterface(String name) {
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(V1_8, ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT, name, null, "java/lang/Object", null);
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright Terracotta, Inc.
+ * Copyright IBM Corp. 2024, 2025
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terracotta.build.plugins.packaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class PackageRelocatorTest {
+
+  @Test
+  public void testFirstOverlappingRelocationWins() {
+    Map<String, String> relocations = new LinkedHashMap<>();
+    relocations.put("org.foo", "a.foo");
+    relocations.put("org.foo.bar", "b.bar");
+    PackageRelocator relocator = new PackageRelocator(relocations);
+
+    assertThat(relocator.relocateClassName("org.foo.bar.Baz"), is("a.foo.bar.Baz"));
+    assertThat(relocator.relocatePath("org/foo/bar/Baz.class"), is("a/foo/bar/Baz.class"));
+    assertThat(relocator.relocatePackageName("org.foo.bar"), is("a.foo.bar"));
+  }
+
+  @Test
+  public void testRelocationPriorityFollowsInsertionOrder() {
+    Map<String, String> relocations = new LinkedHashMap<>();
+    relocations.put("org.foo.bar", "b.bar");
+    relocations.put("org.foo", "a.foo");
+    PackageRelocator relocator = new PackageRelocator(relocations);
+
+    assertThat(relocator.relocateClassName("org.foo.bar.Baz"), is("b.bar.Baz"));
+    assertThat(relocator.relocateClassName("org.foo.Baz"), is("a.foo.Baz"));
+    assertThat(relocator.relocatePackageName("org.foo.bar"), is("b.bar"));
+    assertThat(relocator.relocatePackageName("org.foo"), is("a.foo"));
+  }
+
+  /*
+   * Relocations are not chained: a relocated name is not relocated again, consistent with how Shadow relocates the
+   * jar contents themselves.
+   */
+  @Test
+  public void testRelocationsAreNotChained() {
+    Map<String, String> relocations = new LinkedHashMap<>();
+    relocations.put("b", "c");
+    relocations.put("a", "b");
+    PackageRelocator relocator = new PackageRelocator(relocations);
+
+    assertThat(relocator.relocateClassName("a.X"), is("b.X"));
+    assertThat(relocator.relocatePackageName("a"), is("b"));
+    assertThat(relocator.relocatePackageName("b"), is("c"));
+  }
+
+  @Test
+  public void testPackageNameMatchesPatternWithTrailingSeparator() {
+    PackageRelocator relocator = new PackageRelocator(Collections.singletonMap("org.foo.", "shaded.foo."));
+
+    assertThat(relocator.relocatePackageName("org.foo"), is("shaded.foo"));
+    assertThat(relocator.relocatePackageName("org.foo.bar"), is("shaded.foo.bar"));
+    assertThat(relocator.relocatePackageName("org.foobar"), is("org.foobar"));
+    assertThat(relocator.relocatePackageName("org"), is("org"));
+    assertThat(relocator.relocateClassName("org.foo"), is("org.foo"));
+  }
+
+  @Test
+  public void testPackageNameMatchesPatternWithoutTrailingSeparator() {
+    PackageRelocator relocator = new PackageRelocator(Collections.singletonMap("org.foo", "shaded.foo"));
+
+    assertThat(relocator.relocatePackageName("org.foo"), is("shaded.foo"));
+    assertThat(relocator.relocatePackageName("org.foobar"), is("shaded.foobar"));
+    assertThat(relocator.relocatePackageName("org"), is("org"));
+  }
+
+  @Test
+  public void testDestinationSeparatorFollowsPattern() {
+    Map<String, String> relocations = new LinkedHashMap<>();
+    relocations.put("org.foo.", "shaded.foo");
+    relocations.put("org.bar", "shaded.bar.");
+    relocations.put("org/baz/", "shaded/baz");
+    PackageRelocator relocator = new PackageRelocator(relocations);
+
+    assertThat(relocator.relocateClassName("org.foo.Foo"), is("shaded.foo.Foo"));
+    assertThat(relocator.relocatePath("org/foo/Foo.class"), is("shaded/foo/Foo.class"));
+    assertThat(relocator.relocatePackageName("org.foo"), is("shaded.foo"));
+    assertThat(relocator.relocatePackageName("org.foo.sub"), is("shaded.foo.sub"));
+
+    assertThat(relocator.relocateClassName("org.bar.Bar"), is("shaded.bar.Bar"));
+    assertThat(relocator.relocatePath("org/bar/Bar.class"), is("shaded/bar/Bar.class"));
+    assertThat(relocator.relocatePackageName("org.bar"), is("shaded.bar"));
+    assertThat(relocator.relocatePackageName("org.barbar"), is("shaded.barbar"));
+
+    assertThat(relocator.relocateClassName("org.baz.Baz"), is("shaded.baz.Baz"));
+    assertThat(relocator.relocatePackageName("org.baz"), is("shaded.baz"));
+  }
+
+  @Test
+  public void testEmptyPatternMatchesEverything() {
+    Map<String, String> relocations = new LinkedHashMap<>();
+    relocations.put("org.foo", "a.foo");
+    relocations.put("", "shaded.");
+    PackageRelocator relocator = new PackageRelocator(relocations);
+
+    assertThat(relocator.relocateClassName("org.foo.Bar"), is("a.foo.Bar"));
+    assertThat(relocator.relocateClassName("com.Bar"), is("shaded.com.Bar"));
+    assertThat(relocator.relocatePath("com/Bar.class"), is("shaded/com/Bar.class"));
+    assertThat(relocator.relocatePackageName("com"), is("shaded.com"));
+  }
+
+  @Test
+  public void testIndexMatchesLinearRelocation() {
+    Random random = new Random(42);
+    String[] segments = {"org", "com", "foo", "bar", "fo", "b"};
+    for (int round = 0; round < 200; round++) {
+      Map<String, String> relocations = new LinkedHashMap<>();
+      int count = random.nextInt(6);
+      for (int i = 0; i < count; i++) {
+        String pattern = name(random, segments, random.nextInt(4));
+        if (!pattern.isEmpty() && random.nextBoolean()) {
+          pattern += ".";
+        }
+        relocations.putIfAbsent(pattern, "shaded" + i + (pattern.endsWith(".") ? "." : ""));
+      }
+      PackageRelocator relocator = new PackageRelocator(relocations);
+      LinearRelocator linear = new LinearRelocator(relocations);
+
+      for (int i = 0; i < 50; i++) {
+        String name = name(random, segments, 1 + random.nextInt(4));
+        String message = relocations + " " + name;
+        assertThat(message, relocator.relocateClassName(name), is(linear.relocateClassName(name)));
+        assertThat(message, relocator.relocatePath(name.replace('.', '/')), is(linear.relocatePath(name.replace('.', '/'))));
+        assertThat(message, relocator.relocatePackageName(name), is(linear.relocatePackageName(name)));
+      }
+    }
+  }
+
+  private static String name(Random random, String[] segments, int length) {
+    List<String> name = new ArrayList<>();
+    for (int i = 0; i < length; i++) {
+      name.add(segments[random.nextInt(segments.length)]);
+    }
+    return String.join(".", name);
+  }
+
+  /**
+   * The relocator's previous implementation: a linear scan for the first relocation whose pattern prefixes the name.
+   */
+  private static final class LinearRelocator {
+
+    private final Map<String, String> relocations;
+
+    LinearRelocator(Map<String, String> relocations) {
+      this.relocations = relocations;
+    }
+
+    String relocateClassName(String className) {
+      for (Map.Entry<String, String> relocation : relocations.entrySet()) {
+        String pattern = relocation.getKey().replace('/', '.');
+        if (className.startsWith(pattern)) {
+          return relocation.getValue().replace('/', '.') + className.substring(pattern.length());
+        }
+      }
+      return className;
+    }
+
+    String relocatePath(String path) {
+      for (Map.Entry<String, String> relocation : relocations.entrySet()) {
+        String pattern = relocation.getKey().replace('.', '/');
+        if (path.startsWith(pattern)) {
+          return relocation.getValue().replace('.', '/') + path.substring(pattern.length());
+        }
+      }
+      return path;
+    }
+
+    String relocatePackageName(String packageName) {
+      String relocated = relocateClassName(packageName + ".");
+      return relocated.isEmpty() ? relocated : relocated.substring(0, relocated.length() - 1);
+    }
+  }
+}